@@ -16,17 +16,18 @@
 
 package io.github.eternalbits.apple;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
-import javax.imageio.ImageIO;
-
+import io.github.eternalbits.disk.DiskIcons;
+import io.github.eternalbits.disk.IconLimits;
+import io.github.eternalbits.disk.IconPixels;
+import io.github.eternalbits.disk.IconSource;
+import io.github.eternalbits.icons.Pool;
 import io.github.eternalbits.icons.Static;
+import io.github.eternalbits.png.PngEncoder;
 
 /**
  * A bitmap is an array of bits that specify the color of each pixel in a rectangular
@@ -44,66 +45,71 @@ public class AppHeader {
 	public AppHeader() {}
 	
 	/**
-	 * Returns the BufferedImage in PNG format in bytes format.
+	 * Returns the pixels in PNG format in bytes format. The bytes are in the
+	 *  output buffer of {@link Pool#output()}, valid until it is used again.
 	 * 
-	 * @param image	An access to the BufferedImage.
+	 * @param image	The pixels of the icon.
 	 * @return	The PNG format in bytes format.
 	 */
-	public byte[] writePng(BufferedImage image) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ImageIO.write(image, "png", baos);
-		return baos.toByteArray();
+	public Pool.Output writePng(IconPixels image) throws IOException {
+		Pool.Output out = Pool.output();
+		PngEncoder.encode(image, out);
+		return out;
 	}
 	
 	/**
 	 * Returns Apple format in bytes format.
 	 * 
-	 * @param image	An access to the BufferedImage.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
 	 * @return	The Apple format in bytes format.
 	 */
-	public byte[] writeApple(BufferedImage image, int power) throws IOException {
-		byte[] apple = new byte[Static.appleRound(3, power)];
+	public byte[] writeApple(IconPixels image, int power) throws IOException {
+		byte[] apple = Pool.borrow(Static.appleRound(3, power));
 		byte[] buffer = Static.toBitmap(image, power);
+		byte[] icon = Pool.borrow(power * power);
 		int posic = 0;
 		for (int i = 0; i < 3; i++) {
-			byte[] icon = new byte[power * power];
 			preparingForApple(buffer, icon, 2 - i);
 			posic = encodeRgbAndMask(icon, apple, posic);
 		}
 		int it32 = power == 128 ? 4 : 0;
 		byte[] detail = new byte[it32 + posic];
 		System.arraycopy(apple, 0, detail, it32, posic);
+		Pool.giveBack(icon);
+		Pool.giveBack(buffer);
+		Pool.giveBack(apple);
 		return detail;
 	}
 	
 	/**
 	 * Returns Mask format in bytes format.
 	 * 
-	 * @param image	An access to the BufferedImage.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
 	 * @return	The Mask format in bytes format.
 	 */
-	public byte[] writeMask(BufferedImage image, int power) throws IOException {
+	public byte[] writeMask(IconPixels image, int power) throws IOException {
 		byte[] buffer = Static.toBitmap(image, power);
 		byte[] detail = new byte[power * power];
 		preparingForApple(buffer, detail, 3);
+		Pool.giveBack(buffer);
 		return detail;
 	}
 	
 	/**
 	 * Returns ARGB format in bytes format.
 	 * 
-	 * @param image	An access to the BufferedImage.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
 	 * @return	The ARGB format in bytes format.
 	 */
-	public byte[] writeArgb(BufferedImage image, int power) throws IOException {
-		byte[] apple = new byte[Static.appleRound(4, power)];
+	public byte[] writeArgb(IconPixels image, int power) throws IOException {
+		byte[] apple = Pool.borrow(Static.appleRound(4, power));
 		byte[] buffer = Static.toBitmap(image, power);
+		byte[] icon = Pool.borrow(power * power);
 		int posic = 0;
 		for (int i = 0; i < 4; i++) {
-			byte[] icon = new byte[power * power];
 			preparingForApple(buffer, icon, 3 - i);
 			posic = encodeRgbAndMask(icon, apple, posic);
 		}
@@ -111,6 +117,9 @@ public class AppHeader {
 		ByteBuffer tw = ByteBuffer.wrap(detail).order(ByteOrder.BIG_ENDIAN);
 		System.arraycopy(apple, 0, detail, 4, posic);
 		tw.putInt(0, 0x41524742);	// ARGB
+		Pool.giveBack(icon);
+		Pool.giveBack(buffer);
+		Pool.giveBack(apple);
 		return detail;
 	}
 	
@@ -176,77 +185,144 @@ public class AppHeader {
 	}
 	
 	/**
-	 * Reads the ARGB. In this case a header of 108 bytes in length
-	 *  is used to pay attention to the mask.
+	 * Reads the ARGB. The four planes are expanded one after the other,
+	 *  alpha, red, green and blue, and then packed into the pixels.
 	 * 
-	 * @param from	Read access to RandomAccessFile.
+	 * @param img	Read access to the DiskIcons.
 	 * @param original	The reading position.
 	 * @param size	Number of bytes to be passed.
 	 * @param power	The length of one side.
-	 * @return	Image with an accessible buffer of image data.
+	 * @return	The pixels of the icon, or {@code null} if the size cannot be an ARGB.
 	 */
-	public BufferedImage createArgb(RandomAccessFile from, int original, int size, int power) throws IOException {
-		int header = 14 + Static.BITMAP_HEADER;			// It uses 108 bytes instead of 40 because this allows the mask to be used
-		int length = header + 4 * power * power;		// length of the image as a bitmap
-		byte[] bytes = new byte[4 * power * power]; 	// image buffer after expanded
-		byte[] icon = new byte[size - 4];				// the 32-bit ARGB of the image while it is compressed
-		byte[] buffer = new byte[length];				// buffer the image as a bitmap
-		from.seek(original + 4);			
-		from.read(icon);
+	public IconPixels createArgb(DiskIcons img, int original, int size, int power) throws IOException {
+		if (!fitsArgb(size, power))
+			return null;
+		IconLimits.checkEntry(img.getPath(), size);
+		IconLimits.checkPixels(img.getPath(), power, power);
+		byte[] bytes = Pool.borrow(4 * power * power); 	// image buffer after expanded
+		byte[] icon = Pool.borrow(size - 4);			// the 32-bit ARGB of the image while it is compressed
+		Arrays.fill(bytes, (byte) 0);
+		Arrays.fill(icon, (byte) 0);
+		img.readBytes(original + 4, icon, 0, icon.length);
 		decodeRgbAndMask(icon, bytes, 0);				// add the expanded 32-bit ARGB to it
-		for (int i = 0; i < 4; i++)						// finally prepare the bitmap
-			preparingForBitmap(buffer, bytes, header + 3 - i, i * power * power, power);
-		Static.headerForBitmap(buffer, length, power);	// finalizes the bitmap
-		return ImageIO.read(new ByteArrayInputStream(buffer));
+		IconPixels image = preparingForImage(img, bytes, power);	// finally prepare the image
+		Pool.giveBack(icon);
+		Pool.giveBack(bytes);
+		return image;
 	}
 	
 	/**
 	 * Reads the Apple and the Mask. This is read at the end because Apple
 	 *  and the Mask can come in any order.
 	 * 
-	 * @param from	Read access to RandomAccessFile.
+	 * @param img	Read access to the DiskIcons.
 	 * @param original	The reading position for 24-bit RGB.
 	 * @param size	Number of bytes to be passed for 24-bit RGB.
 	 * @param duplicate	The reading position for mask.
 	 * @param mask	Number of bytes to be passed for mask.
 	 * @param power	The length of one side.
-	 * @return	Image with an accessible buffer of image data.
+	 * @return	The pixels of the icon, or {@code null} if the sizes cannot be an Apple and a Mask.
 	 */
-	public BufferedImage createApple(RandomAccessFile from, int original, int size, int duplicate, int mask, int power) throws IOException {
-		int header = 14 + Static.BITMAP_HEADER;			// It uses 108 bytes instead of 40 because this allows the mask to be used
+	public IconPixels createApple(DiskIcons img, int original, int size, int duplicate, int mask, int power) throws IOException {
 		int it32 = power == 128 ? 4 : 0;				// it32 data always starts with a header of four zero-bytes
-		int length = header + 4 * power * power;		// length of the image as a bitmap
-		byte[] bytes = new byte[4 * power * power];		// image buffer after expanded
-		byte[] icon = new byte[size - it32];			// the 24-bit RGB portion of the image while it is compressed
-		byte[] buffer = new byte[length];				// buffer the image as a bitmap
-		from.seek(original + it32);
-		from.read(icon);
-		from.seek(duplicate);
-		from.read(bytes, 0, mask);						// read the image bitmap directly into the bytes
+		if (!fitsApple(size, mask, power))
+			return null;
+		IconLimits.checkEntry(img.getPath(), size);
+		IconLimits.checkPixels(img.getPath(), power, power);
+		byte[] bytes = Pool.borrow(4 * power * power);	// image buffer after expanded
+		byte[] icon = Pool.borrow(size - it32);			// the 24-bit RGB portion of the image while it is compressed
+		Arrays.fill(bytes, (byte) 0);
+		Arrays.fill(icon, (byte) 0);
+		img.readBytes(original + it32, icon, 0, icon.length);
+		img.readBytes(duplicate, bytes, 0, mask);		// read the image bitmap directly into the bytes
 		decodeRgbAndMask(icon, bytes, mask);			// then add the expanded 24-bit RGB to it
-		for (int i = 0; i < 4; i++)						// finally prepare the bitmap
-			preparingForBitmap(buffer, bytes, header + 3 - i, i * power * power, power);
-		Static.headerForBitmap(buffer, length, power);	// finalizes the bitmap
-		return ImageIO.read(new ByteArrayInputStream(buffer));
+		IconPixels image = preparingForImage(img, bytes, power);	// finally prepare the image
+		Pool.giveBack(icon);
+		Pool.giveBack(bytes);
+		return image;
 	}
 	
 	/**
-	 * Copy the respective bytes from the icon to the source. While in the source the
-	 *  bytes are distributed, like rgba, in the icon the bytes are grouped, like
-	 *  red, green and blue. Also note that while on MacOS it is "top to bottom", on 
-	 *  Windows pixels are stored "bottom to top", starting in the bottom left corner.
+	 * True if an ARGB of {@code size} bytes can be decoded by {@link #createArgb},
+	 *  checked when the file is opened so that the pixels can be decoded later.
 	 * 
-	 * @param source	Byte source, always RGBA.
-	 * @param icon	Origin of the bytes.
-	 * @param index	Color index: 0 for transparency, 1 for red, 2 for green and 3 for blue.
-	 * @param posic	Position in the icon table.
+	 * @param size	Number of bytes of the entry.
+	 * @param power	The length of one side.
+	 */
+	public boolean fitsArgb(int size, int power) {
+		return size >= 4 && power > 0;					// At least the "ARGB" of the header
+	}
+	
+	/**
+	 * True if an Apple and a Mask of these sizes can be decoded by {@link #createApple}.
+	 * 
+	 * @param size	Number of bytes of the 24-bit RGB.
+	 * @param mask	Number of bytes of the mask.
+	 * @param power	The length of one side.
+	 */
+	public boolean fitsApple(int size, int mask, int power) {
+		return power > 0 && size >= (power == 128 ? 4 : 0) && mask >= 0 && mask <= power * power;
+	}
+	
+	/**
+	 * The way to decode the ARGB of {@link #createArgb} again from the file.
+	 * 
+	 * @param img	Read access to the DiskIcons.
+	 * @param original	The reading position.
+	 * @param size	Number of bytes to be passed.
 	 * @param power	The length of one side.
+	 * @return	The source of the pixels of the icon.
 	 */
-	private void preparingForBitmap(byte[] source, byte[] icon, int index, int posic, int power) {
-		int padd = 4 * power;
-		for (int j = power * padd - padd,  m = 0; j >= 0; j -= padd, m += power)
-			for (int i = index + j, n = posic + m; i < index + j + padd; i += 4, n++) 
-				source[i] = icon[n];
+	public IconSource sourceArgb(final DiskIcons img, final int original, final int size, final int power) {
+		return img.source(new IconSource() {
+			@Override
+			public IconPixels decode() throws IOException {
+				return createArgb(img, original, size, power);
+			}
+		});
+	}
+	
+	/**
+	 * The way to decode the Apple and the Mask of {@link #createApple} again from the file.
+	 * 
+	 * @param img	Read access to the DiskIcons.
+	 * @param original	The reading position for 24-bit RGB.
+	 * @param size	Number of bytes to be passed for 24-bit RGB.
+	 * @param duplicate	The reading position for mask.
+	 * @param mask	Number of bytes to be passed for mask.
+	 * @param power	The length of one side.
+	 * @return	The source of the pixels of the icon.
+	 */
+	public IconSource sourceApple(final DiskIcons img, final int original, final int size, 
+			final int duplicate, final int mask, final int power) {
+		return img.source(new IconSource() {
+			@Override
+			public IconPixels decode() throws IOException {
+				return createApple(img, original, size, duplicate, mask, power);
+			}
+		});
+	}
+	
+	/**
+	 * Packs the expanded planes into pixels, one row at a time. Both Apple and
+	 *  the pixels are "top to bottom", so unlike a bitmap nothing is reversed.
+	 * 
+	 * @param img	The DiskIcons that owns the pixels.
+	 * @param bytes	The planes of alpha, red, green and blue, one after the other.
+	 * @param power	The length of one side.
+	 * @return	The pixels of the icon.
+	 */
+	private IconPixels preparingForImage(DiskIcons img, byte[] bytes, int power) throws IOException {
+		IconPixels image = img.newPixels(power, power);
+		int[] argb = new int[power];
+		int plane = power * power;
+		for (int y = 0, n = 0; y < power; y++) {
+			for (int x = 0; x < power; x++, n++)
+				argb[x] = (bytes[n] & 0xff) << 24 | (bytes[plane + n] & 0xff) << 16 
+						| (bytes[2 * plane + n] & 0xff) << 8 | (bytes[3 * plane + n] & 0xff);
+			image.setRow(y, argb);
+		}
+		return image;
 	}
 	
 	/**
@@ -16,17 +16,18 @@
 
 package io.github.eternalbits.bitmap;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
-import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
+import io.github.eternalbits.disk.DiskIcons;
+import io.github.eternalbits.disk.IconPixels;
+import io.github.eternalbits.disk.IconSource;
+import io.github.eternalbits.icons.Pool;
 import io.github.eternalbits.icons.Static;
+import io.github.eternalbits.png.PngEncoder;
 
 /**
  * A bitmap is an array of bits that specify the color of each pixel in a rectangular
@@ -44,60 +45,94 @@ public class MapHeader {
 	public MapHeader() {}
 	
 	/**
-	 * Write BufferedImage in PNG format to output RandomAccessFile and returns
-	 *  the length of that BufferedImage.
+	 * Returns the pixels in PNG format. The bytes are in the output buffer of
+	 *  {@link Pool#output()}, valid until it is used again.
 	 * 
-	 * @param image	An access to the BufferedImage.
-	 * @param to	Write access to RandomAccessFile.
-	 * @return	The length of the BufferedImage.
+	 * @param image	The pixels of the icon.
+	 * @return	The PNG in bytes format.
 	 */
-	public int writePng(BufferedImage image, RandomAccessFile to) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ImageIO.write(image, "png", baos);
-		to.write(baos.toByteArray());
-		return baos.size();
+	public Pool.Output writePng(IconPixels image) throws IOException {
+		Pool.Output out = Pool.output();
+		PngEncoder.encode(image, out);
+		return out;
 	}
 	
 	/**
-	 * Writes the Bitmap. Note the reminiscence used by Windows XP.
+	 * Writes the Bitmap. Note the reminiscence used by Windows XP. The rows are
+	 *  converted one at a time from the ARGB pixels, bottom to top, so no copy
+	 *  of the whole bitmap is made. The bytes are in the output buffer of
+	 *  {@link Pool#output()}, valid until it is used again.
 	 * 
-	 * @param image	An access to the BufferedImage.
-	 * @param to	Write access to RandomAccessFile.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
-	 * @return	The length of the Bitmap.
+	 * @return	The Bitmap in bytes format.
 	 */
-	public int writeBitmap(BufferedImage image, RandomAccessFile to, int power) throws IOException {
+	public Pool.Output writeBitmap(IconPixels image, int power) throws IOException {
+		Pool.Output to = Pool.output();
 		int length = 40 + 4 * power * power + 4 * Static.ceilDiv(power, 32) * power;
-		byte[] buffer = Static.toBitmap(image, power);
 		to.write(headerForIcon(length, power));
-		int diff = 4 * power;
-		for (int i = power * diff - diff; i >= 0; i -= diff)
-			to.write(buffer, i, diff);
+		int[] argb = new int[power];
+		byte[] row = Pool.borrow(4 * power);
+		ByteBuffer tw = ByteBuffer.wrap(row).order(ByteOrder.LITTLE_ENDIAN);
+		for (int y = power - 1; y >= 0; y--) {
+			image.getRow(y, argb);
+			for (int x = 0; x < power; x++)
+				tw.putInt(4 * x, argb[x]);
+			to.write(row);
+		}
 		int padd = 4 * Static.ceilDiv(power, 32);
-		byte[] trailer = trailerForIcon(buffer, power);
+		byte[] trailer = trailerForIcon(image, power);
 		for (int i = power * padd - padd; i >= 0; i -= padd)
 			to.write(trailer, i, padd);
-		return length;
+		Pool.giveBack(trailer);
+		Pool.giveBack(row);
+		return to;
 	}
 	
 	/**
-	 * Reads the Bitmap. In this case a header of 108 bytes in length
-	 *  is used to pay attention to the mask.
+	 * Reads the Bitmap. The rows are stored bottom to top as BGRA, which read
+	 *  as a little endian integer is already a packed ARGB pixel, so they go
+	 *  straight into the pixels one row at a time.
+	 * 
+	 * @param img	Read access to the DiskIcons.
+	 * @param original	The reading position.
+	 * @param size	Number of bytes to be passed.
+	 * @param power	The length of one side.
+	 * @return	The pixels of the icon.
+	 */
+	public IconPixels createBitmap(DiskIcons img, int original, int size, int power) throws IOException {
+		IconPixels image = img.newPixels(power, power);
+		int[] argb = new int[power];
+		byte[] row = Pool.borrow(4 * power);
+		ByteBuffer tr = ByteBuffer.wrap(row).order(ByteOrder.LITTLE_ENDIAN);
+		try (ImageInputStream in = img.openIcon(original + 40, 4 * power * power)) {
+			for (int y = power - 1; y >= 0; y--) {
+				in.readFully(row);
+				for (int x = 0; x < power; x++)
+					argb[x] = tr.getInt(4 * x);
+				image.setRow(y, argb);
+			}
+		}
+		Pool.giveBack(row);
+		return image;
+	}
+
+	/**
+	 * The way to decode the Bitmap of {@link #createBitmap} again from the file.
 	 * 
-	 * @param from	Read access to RandomAccessFile.
+	 * @param img	Read access to the DiskIcons.
 	 * @param original	The reading position.
 	 * @param size	Number of bytes to be passed.
 	 * @param power	The length of one side.
-	 * @return	Image with an accessible buffer of image data.
+	 * @return	The source of the pixels of the icon.
 	 */
-	public BufferedImage createBitmap(RandomAccessFile from, int original, int size, int power) throws IOException {
-		int header = 14 + Static.BITMAP_HEADER;			// It uses 108 bytes instead of 40 because this allows the mask to be used
-		int length = header + 4 * power * power;		// length of the image as a bitmap
-		byte[] buffer = new byte[length];				// buffer the image as a bitmap
-		from.seek(original + 40);
-		from.read(buffer, header, 4 * power * power);	// read the image directly into the buffer
-		Static.headerForBitmap(buffer, length, power);	// finalizes the bitmap
-		return ImageIO.read(new ByteArrayInputStream(buffer));
+	public IconSource sourceBitmap(final DiskIcons img, final int original, final int size, final int power) {
+		return img.source(new IconSource() {
+			@Override
+			public IconPixels decode() throws IOException {
+				return createBitmap(img, original, size, power);
+			}
+		});
 	}
 
 	/**
@@ -131,21 +166,22 @@ public class MapHeader {
 	 *  currently used, but the icon only works with this transparency. In Windows XP
 	 *  the only transparency used are this bitmap generated here.
 	 * 
-	 * @param source	The default image with 4 colors specifying the RGBA.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
-	 * @return	The resulting bitmap.
+	 * @return	The resulting bitmap, borrowed from {@link Pool}.
 	 */
-	private byte[] trailerForIcon(byte[] source, int power) {
+	private byte[] trailerForIcon(IconPixels image, int power) {
 		int padd = 4 * Static.ceilDiv(power, 32);
-		byte[] trailer = new byte[power * padd];
+		byte[] trailer = Pool.borrow(power * padd);
+		int[] source = new int[power];
 		ByteBuffer tw = ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN);
-		ByteBuffer tr = ByteBuffer.wrap(source).order(ByteOrder.LITTLE_ENDIAN);
 		for (int y = 0; y < power; y++) {
+			image.getRow(y, source);
 			for (int x = 0; x < padd; x++) {
 				byte maskValue = 0;
 				for (int bit = 0; bit < 8; bit++) {
 					if ((x * 8) + bit < power) {
-						int srcPixel = tr.getInt(4 * ((y * power) + (x * 8) + bit));
+						int srcPixel = source[(x * 8) + bit];
 						if ((srcPixel >>> 24) < 128)
 							maskValue |= (1 << (7 - bit));
 					}
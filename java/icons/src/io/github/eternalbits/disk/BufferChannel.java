@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read only SeekableByteChannel over the bytes of a ByteBuffer, so that an
+ *  icon in memory is read by the same headers as an icon in a file. The bytes
+ *  are never copied, only a view of them from its position to its limit.
+ * <p>
+ */
+class BufferChannel implements SeekableByteChannel {
+
+	private final ByteBuffer bytes;				// A view of the caller's bytes
+	private boolean open = true;
+
+	BufferChannel(ByteBuffer bytes) {
+		this.bytes = bytes.slice();
+	}
+
+	@Override
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if (!bytes.hasRemaining())
+			return -1;
+		int n = Math.min(dst.remaining(), bytes.remaining());
+		ByteBuffer src = bytes.duplicate();
+		src.limit(src.position() + n);
+		dst.put(src);
+		bytes.position(bytes.position() + n);
+		return n;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized long position() throws IOException {
+		ensureOpen();
+		return bytes.position();
+	}
+
+	@Override
+	public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0)
+			throw new IllegalArgumentException(Long.toString(newPosition));
+		bytes.position((int) Math.min(newPosition, bytes.limit()));
+		return this;
+	}
+
+	@Override
+	public synchronized long size() throws IOException {
+		ensureOpen();
+		return bytes.limit();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public synchronized void close() {
+		open = false;
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open)
+			throw new ClosedChannelException();
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+/**
+ * One entry of an icon, as published by {@link IconConverter#decode}. Each
+ *  entry is published twice: first with its directory information only, as
+ *  soon as the header is read, and then again with its pixels once decoded.
+ * <p>
+ */
+public class DecodedEntry {
+	
+	private final int index;					// The number of the entry in the file
+	private final int isIcon;					// ICON_PNG, ICON_BITMAP, ICON_APPLE or ICON_ARGB
+	private final String type;					// PNG, ICO or the type of ICNS
+	private final String description;			// As shown by the viewer
+	private final int width, height;			// Size in pixels, as found in the header
+	private final boolean decoded;				// The pixels were decoded
+	private final IconPixels pixels;			// The pixels, null if not decoded or if they could not be
+	
+	DecodedEntry(int index, DiskIconsView fs) {
+		this.index = index;
+		this.isIcon = fs.isIcon;
+		this.type = fs.type;
+		this.description = fs.description;
+		this.width = fs.getImageWidth();
+		this.height = fs.getImageHeight();
+		this.decoded = false;
+		this.pixels = null;
+	}
+	
+	private DecodedEntry(DecodedEntry entry, IconPixels pixels) {
+		this.index = entry.index;
+		this.isIcon = entry.isIcon;
+		this.type = entry.type;
+		this.description = entry.description;
+		this.width = entry.width;
+		this.height = entry.height;
+		this.decoded = true;
+		this.pixels = pixels;
+	}
+	
+	/**
+	 * The same entry with its pixels.
+	 */
+	DecodedEntry decoded(IconPixels pixels) {
+		return new DecodedEntry(this, pixels);
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+	
+	public int getIsIcon() {
+		return isIcon;
+	}
+	
+	public String getType() {
+		return type;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * True if this is the entry with its pixels, false if it is the directory information.
+	 */
+	public boolean isDecoded() {
+		return decoded;
+	}
+	
+	/**
+	 * The pixels, or {@code null} if they are not decoded yet or could not be decoded.
+	 */
+	public IconPixels getPixels() {
+		return pixels;
+	}
+	
+	@Override
+	public String toString() {
+		return index + " " + description + (decoded? pixels == null? " undecodable": " decoded": "");
+	}
+	
+}
@@ -16,10 +16,24 @@
 
 package io.github.eternalbits.disk;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.imageio.stream.ImageInputStream;
+
+import io.github.eternalbits.icons.Pool;
 
 /**
  * Abstract class that represents a disk icon. Icon images generally have
@@ -27,6 +41,10 @@ import java.util.List;
  * <p>
  */
 public abstract class DiskIcons implements AutoCloseable {
+	private static final String FILE_CHANGED = "%s was changed since it was read";
+	
+	private static final Set<DiskIcons> readers = 		// Every DiskIcons whose entries still read from its file.
+			Collections.newSetFromMap(new WeakHashMap<DiskIcons, Boolean>());
 	
 	public static final int NOT_AN_ICON = -1;			// This entry is not an icon, it is a Table of contents or other unknown entry.
 	public static final int TABLE_OF_CONTENTS = 0;		// It's a Table of contents.
@@ -35,12 +53,21 @@ public abstract class DiskIcons implements AutoCloseable {
 	public static final int ICON_APPLE = 3;				// It's an icon with two parts, one is the RGB part from Apple.
 	public static final int ICON_MASK = 4;				// It's an icon with two parts, other is the mask from Apple.
 	public static final int ICON_ARGB = 5;				// It's an icon with ARGB part from Apple.
+	public static final int ICON_AUTO = 6;				// It's an icon written as PNG or as the other type, whichever is smaller.
 	
 	protected RandomAccessFile media = null;			// All inputs and outputs are done through a RandomAccessFile.
 	public RandomAccessFile getMedia() {
 		return media;
 	}
 	
+	private SeekableByteChannel input = null;			// Or inputs through a channel of the caller, like memory, that is never closed here.
+	protected void setInput(SeekableByteChannel in) {
+		input = in;
+	}
+	private SeekableByteChannel input() {
+		return media != null? media.getChannel(): input;
+	}
+	
 	public abstract List<DiskIconsView> getFiles();		// Represents the structure of an icon through repeated DiskIconsView input.
 	public abstract void putIcon(DiskIconsView fs);		// Represents the structure of an entry outside of DiskIconsView.
 	public boolean done = false;						// To see if burning to disk worked.
@@ -68,28 +95,320 @@ public abstract class DiskIcons implements AutoCloseable {
 		return length;
 	}
 	
-	protected boolean undo = false;						// The current position (undo number).
-	public boolean getUndo() {
-		return undo;
+	/**
+	 * A copy of the entries that can be changed and written on its own, while
+	 *  the pixels and the bytes are those of this DiskIcons, that must be open
+	 *  for as long as the copy is used. The same file can then be written with
+	 *  several icon phrases at once, each from its own copy.
+	 * 
+	 * @return	The copy, closing it does nothing.
+	 */
+	public DiskIcons copy() {
+		return new DiskIconsCopy(this);
+	}
+	
+	protected long modified = 0;						// The time the image file was last modified, when it was read.
+	
+	private PixelArena arena = null;					// Owns the decoded pixels when they are off-heap.
+	protected void setOffHeap(boolean offHeap) {
+		arena = offHeap? new PixelArena(): null;
+	}
+	public boolean isOffHeap() {
+		return arena != null;
+	}
+	
+	private final IconHistory history = new IconHistory(this);	// The edits that can be undone.
+	public IconHistory getHistory() {
+		return history;
 	}
-	public void setUndo(boolean undo) {
-		this.undo = undo;
+	public boolean getUndo() {							// True if changed since it was read or saved.
+		return history.isChanged();
 	}
 	
 	/**
 	 * Represents a reading of an icon that is transformed into a ByteBuffer.
 	 *  There is no order as it can be used as LITTLE_ENDIAN or BIG_ENDIAN
-	 *  depending on the situation.
+	 *  depending on the situation. The array is borrowed from {@link Pool}, and
+	 *  can be given back with {@code Pool.giveBack(tr.array())} when done.
 	 * 
 	 * @param offset	The reading position.
 	 * @param length	Number of bytes to be read.
 	 * @return	The resulting ByteBuffer.
 	 */
 	public ByteBuffer readIcon(long offset, int length) throws IOException {
-		media.seek(offset);
-		byte[] buffer = new byte[length];
-		int read = media.read(buffer, 0, length);
-		return ByteBuffer.wrap(buffer, 0, read < 0? 0: read);
+		byte[] buffer = Pool.borrow(Pool.sizeClass(length));
+		int read = readBytes(offset, buffer, 0, length);
+		return ByteBuffer.wrap(buffer, 0, read);
+	}
+	
+	/**
+	 * Reads {@code length} bytes at {@code offset} into {@code buffer}, or less
+	 *  if the end is found first.
+	 * 
+	 * @param offset	The reading position.
+	 * @param buffer	Where the bytes are read.
+	 * @param off	The first byte of {@code buffer}.
+	 * @param length	Number of bytes to be read.
+	 * @return	Number of bytes read.
+	 */
+	public int readBytes(long offset, byte[] buffer, int off, int length) throws IOException {
+		ByteBuffer dst = ByteBuffer.wrap(buffer, off, length);
+		while (dst.hasRemaining()) {
+			if (readAt(dst, offset + dst.position() - off) <= 0)
+				break;
+		}
+		return dst.position() - off;
+	}
+	
+	/**
+	 * Reads into {@code dst} from {@code position}, without moving the position
+	 *  of a file. A channel of the caller is positioned and read in one step.
+	 */
+	int readAt(ByteBuffer dst, long position) throws IOException {
+		SeekableByteChannel in = input();
+		if (in instanceof FileChannel)
+			return ((FileChannel) in).read(dst, position);
+		synchronized (in) {
+			in.position(position);
+			return in.read(dst);
+		}
+	}
+	
+	/**
+	 * Represents a reading of an icon as an ImageInputStream limited to
+	 *  {@code [offset, offset+length)}. Nothing is copied up front, the bytes
+	 *  are read from the file as the stream is consumed.
+	 * 
+	 * @param offset	The reading position.
+	 * @param length	Number of bytes that can be read.
+	 * @return	The resulting ImageInputStream, in BIG_ENDIAN order.
+	 */
+	public ImageInputStream openIcon(long offset, int length) throws IOException {
+		return new DiskIconsStream(this, offset, length);
+	}
+	
+	/**
+	 * Wraps a decoder of this DiskIcons so that it can also run after it is
+	 *  closed, like the GUI does right after reading. The file is then opened
+	 *  again only for the decoding, and only if its length and modification
+	 *  time are still those it had when it was read. Decoders of several
+	 *  entries run at the same time, sharing the file opened again, and only
+	 *  the opening and closing is done under the lock of this DiskIcons.
+	 * 
+	 * @param decoder	Decodes one entry with the media of this DiskIcons.
+	 * @return	The decoder to be kept with the entry.
+	 */
+	public IconSource source(final IconSource decoder) {
+		reads();
+		return new IconSource() {
+			@Override
+			public IconPixels decode() throws IOException {
+				return reread(decoder);
+			}
+		};
+	}
+	
+	private int decoding = 0;							// Decoders running, the media is not closed under them.
+	private boolean reopened = false;					// The media was opened again for them, and is closed by the last one.
+	
+	private IconPixels reread(IconSource decoder) throws IOException {
+		enter();
+		try {
+			return decoder.decode();
+		}
+		finally {
+			leave();
+		}
+	}
+	
+	private synchronized void enter() throws IOException {
+		if (decoding == 0)
+			reopened = reopen();
+		decoding++;
+	}
+	
+	private synchronized void leave() throws IOException {
+		if (--decoding > 0)
+			return;
+		notifyAll();
+		if (reopened) {
+			reopened = false;
+			reclose();
+		}
+	}
+	
+	/**
+	 * Waits for the running decoders to end, before the media is closed or
+	 *  replaced. Must be called with the lock of this DiskIcons.
+	 */
+	private void idle() {
+		while (decoding > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Opens the file again for reading if this DiskIcons was closed.
+	 * 
+	 * @return	true if it was opened, and must be closed again with {@link #reclose()}.
+	 */
+	private boolean reopen() throws IOException {
+		if (media != null || input != null)
+			return false;
+		File file = new File(path);
+		if (file.length() != length || file.lastModified() != modified)
+			throw new IOException(String.format(FILE_CHANGED, path));
+		media = new RandomAccessFile(file, "r");
+		return true;
+	}
+	
+	private void reclose() throws IOException {
+		media.close();
+		media = null;
+	}
+	
+	/**
+	 * The encoded bytes of an entry, to be written again without decoding them.
+	 * 
+	 * @param offset	The reading position.
+	 * @param length	Number of bytes.
+	 * @param encoding	ICON_PNG, ICON_BITMAP or ICON_ARGB.
+	 * @param power	The length of one side.
+	 * @return	The bytes of the entry in this file.
+	 */
+	public IconBytes bytes(int offset, int length, int encoding, int power) {
+		reads();
+		return new IconBytes(this, offset, length, encoding, power);
+	}
+	
+	synchronized byte[] loadIcon(long offset, int length) throws IOException {
+		boolean opened = reopen();
+		try {
+			byte[] buffer = new byte[length];
+			if (readBytes(offset, buffer, 0, length) < length)
+				throw new EOFException(path);
+			return buffer;
+		}
+		finally {
+			if (opened) reclose();
+		}
+	}
+	
+	/**
+	 * Writes {@code length} bytes at {@code offset} to {@code out}. A file is
+	 *  transferred by the file system, where it can, without coming through the
+	 *  heap, anything else is copied through a buffer borrowed from {@link Pool}.
+	 */
+	synchronized void transferTo(long offset, int length, WritableByteChannel out) throws IOException {
+		boolean opened = reopen();
+		try {
+			SeekableByteChannel in = input();
+			if (in instanceof FileChannel) {
+				for (long done = 0; done < length; ) {
+					long sent = ((FileChannel) in).transferTo(offset + done, length - done, out);
+					if (sent <= 0)
+						throw new EOFException(path);
+					done += sent;
+				}
+				return;
+			}
+			byte[] buffer = Pool.borrow(Pool.sizeClass(Math.min(length, 1 << 16)));
+			try {
+				for (int done = 0; done < length; ) {
+					int read = readBytes(offset + done, buffer, 0, Math.min(length - done, buffer.length));
+					if (read <= 0)
+						throw new EOFException(path);
+					ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+					while (src.hasRemaining())
+						out.write(src);
+					done += read;
+				}
+			}
+			finally {
+				Pool.giveBack(buffer);
+			}
+		}
+		finally {
+			if (opened) reclose();
+		}
+	}
+	
+	private void reads() {
+		if (input == null && modified != 0) {
+			synchronized (readers) {
+				readers.add(this);
+			}
+		}
+	}
+	
+	/**
+	 * Called before {@code file} is replaced. Every DiskIcons that was read
+	 *  from that file, the one being written or any other still open, like
+	 *  another window or the original of a {@link #copy()}, reads the whole
+	 *  file into memory and its entries are read from there. Those not decoded
+	 *  yet and the bytes that are reused unchanged are then still those that
+	 *  were read, and the file can be saved again, like the GUI does after
+	 *  each edit.
+	 * 
+	 * @param file	The file that is about to be replaced.
+	 */
+	public static void release(File file) throws IOException {
+		if (!file.exists())
+			return;
+		List<DiskIcons> all;
+		synchronized (readers) {
+			all = new ArrayList<DiskIcons>(readers);
+		}
+		for (DiskIcons image: all) {
+			if (image.keep(file)) {
+				synchronized (readers) {
+					readers.remove(image);
+				}
+			}
+		}
+	}
+	
+	private synchronized boolean keep(File file) throws IOException {
+		if (input != null)									// Already in memory
+			return true;
+		if (!Files.isSameFile(file.toPath(), new File(path).toPath()))
+			return false;
+		idle();
+		byte[] buffer = new byte[(int) length];
+		boolean opened = reopen();
+		try {
+			if (readBytes(0, buffer, 0, buffer.length) < buffer.length)
+				throw new EOFException(path);
+		}
+		finally {
+			if (opened) reclose();
+		}
+		if (media != null) {
+			media.close();
+			media = null;
+		}
+		input = new BufferChannel(ByteBuffer.wrap(buffer));
+		return true;
+	}
+	
+	/**
+	 * Creates transparent pixels for a decoded entry. When this DiskIcons is
+	 *  off-heap they are kept in direct buffers, and are only valid until it
+	 *  is closed.
+	 * 
+	 * @param width	Width in pixels.
+	 * @param height	Height in pixels.
+	 * @return	The new pixels.
+	 * @throws InitializationException	If the size is above {@link IconLimits}.
+	 */
+	public IconPixels newPixels(int width, int height) throws InitializationException {
+		IconLimits.checkPixels(path, width, height);
+		return arena == null? new IconPixels(width, height): arena.newPixels(width, height);
 	}
 	
 	/**
@@ -97,13 +416,20 @@ public abstract class DiskIcons implements AutoCloseable {
 	 *  exiting a try-with-resources block for which the object has been declared
 	 *  in the resource specification header. This means that we no longer have access 
 	 *  to the RandomAccessFile, but we do have access to the other variables.
+	 *  Off-heap pixels are the exception, they are released here. A channel of
+	 *  the caller is left open, and the entries are decoded from it while it is.
 	 */
 	@Override
 	public synchronized void close() throws IOException {
+		idle();
 		if (media != null) {
 			media.close();
 			media = null;
 		}
+		if (arena != null) {
+			arena.close();
+			arena = null;
+		}
 	}
 	
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entries of another DiskIcons, copied by {@link DiskIcons#copy()}. It has
+ *  no file of its own, everything it reads comes from the original.
+ * <p>
+ */
+class DiskIconsCopy extends DiskIcons {
+	
+	private final List<DiskIconsView> files;
+	private final String of;
+	
+	DiskIconsCopy(DiskIcons image) {
+		path = image.getPath();
+		length = image.getLength();
+		of = image.getType();
+		setType();
+		if (image.getFiles() == null) {
+			files = null;
+		}
+		else {
+			files = new ArrayList<DiskIconsView>();
+			for (DiskIconsView fs: image.getFiles())
+				files.add(fs.copy());
+		}
+	}
+	
+	@Override
+	public List<DiskIconsView> getFiles() {
+		return files;
+	}
+	
+	@Override
+	public void putIcon(DiskIconsView fs) {
+		files.add(fs);
+	}
+	
+	@Override
+	public void setType() {
+		type = of;
+	}
+	
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An ImageInputStream limited to the region {@code [offset, offset+length)} of
+ *  a file. Bytes are read with positional reads of the DiskIcons, so the entry
+ *  is never copied as a whole and the position of the RandomAccessFile is left
+ *  untouched. Small reads go through an 8 KB window, large reads go straight
+ *  into the caller's array. Closing the stream leaves the file, which belongs
+ *  to the DiskIcons, open.
+ * <p>
+ */
+class DiskIconsStream extends ImageInputStreamImpl {
+	private static final int WINDOW = 8192;
+
+	private final DiskIcons img;
+	private final long offset;
+	private final long length;
+
+	private final byte[] window = new byte[WINDOW];	// Bytes from windowPos to windowPos + windowLen
+	private long windowPos = 0;
+	private int windowLen = 0;
+
+	DiskIconsStream(DiskIcons img, long offset, int length) {
+		this.img = img;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (streamPos >= length)
+			return -1;
+		if (streamPos < windowPos || streamPos >= windowPos + windowLen) {
+			if (fill(streamPos) <= 0)
+				return -1;
+		}
+		bitOffset = 0;
+		return window[(int) (streamPos++ - windowPos)] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		if (off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		if (streamPos >= length)
+			return -1;
+		len = (int) Math.min(len, length - streamPos);
+		bitOffset = 0;
+
+		if (streamPos >= windowPos && streamPos < windowPos + windowLen) {
+			int n = Math.min(len, (int) (windowPos + windowLen - streamPos));
+			System.arraycopy(window, (int) (streamPos - windowPos), b, off, n);
+			streamPos += n;
+			return n;
+		}
+		if (len >= WINDOW) {
+			int n = img.readAt(ByteBuffer.wrap(b, off, len), offset + streamPos);
+			if (n > 0)
+				streamPos += n;
+			return n;
+		}
+		if (fill(streamPos) <= 0)
+			return -1;
+		int n = Math.min(len, windowLen);
+		System.arraycopy(window, 0, b, off, n);
+		streamPos += n;
+		return n;
+	}
+
+	private int fill(long pos) throws IOException {
+		int n = (int) Math.min(WINDOW, length - pos);
+		int read = img.readAt(ByteBuffer.wrap(window, 0, n), offset + pos);
+		windowPos = pos;
+		windowLen = read < 0? 0: read;
+		return read;
+	}
+
+}
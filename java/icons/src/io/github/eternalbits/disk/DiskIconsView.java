@@ -16,25 +16,189 @@
 
 package io.github.eternalbits.disk;
 
-import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 
 import io.github.eternalbits.icons.Static;
 
 /**
- * A read and write view of a {@link DiskImageView}. All fields are public.
+ * A read and write view of a {@link DiskImageView}. All fields are public,
+ *  only the pixels go through {@link #getImage()} because they may be cached.
  * <p>
  */
 public class DiskIconsView implements Comparable<DiskIconsView> {
 	
 	public int				isIcon;				// This is the input icon type that goes from NOT_AN_ICON to ICON_ARGB
-	public int				forIcon;			// This is the output icon type which is PNG, BITMAP, APPLE, MASK, ARGB
+	public int				forIcon;			// This is the output icon type which is PNG, BITMAP, APPLE, MASK, ARGB, AUTO
 	public int				offset;				// The offset goes from the beginning of the file to the beginning of the icon
 	public int				length;				// Icon length, in bytes
 	public int				size;				// Image size while changing
 	public String			type;				// The type can be PNG, ICO or a character set from the Apple macOS
 	public String			description;		// A brief description of the icon for the viewer
 	public String			layout;				// A detailed description for programming
-	public BufferedImage	image;				// A PNG image
+	
+	private IconPixels		image;				// Pixels that only exist in memory, like a pasted image
+	private IconSource		source;				// Decodes the pixels again, when they are not cached
+	private Reference<IconPixels> cached;		// The pixels while the garbage collector allows it
+	private int				width, height;		// Size of the pixels, known without decoding them
+	private IconBytes		bytes;				// The encoded bytes as read, null if the pixels were replaced
+	
+	/**
+	 * Returns the pixels of this entry. Pixels read from a file are decoded on
+	 *  the first call, kept by the {@link IconCache} and decoded again if they
+	 *  were dropped from memory.
+	 * 
+	 * @return	The pixels, or {@code null} if this entry has none or they cannot be decoded.
+	 */
+	public IconPixels getImage() throws IOException {
+		if (image != null || source == null)
+			return image;
+		IconPixels pixels = IconCache.get(this);
+		if (pixels == null && cached != null)
+			pixels = cached.get();
+		if (pixels == null || pixels.isReleased()) {
+			pixels = source.decode();
+			if (pixels == null)
+				return null;
+			cached = new SoftReference<>(pixels);
+		}
+		IconCache.put(this, pixels);
+		return pixels;
+	}
+	
+	/**
+	 * Sets pixels that only exist in memory. They are kept for as long as this
+	 *  entry, outside the budget of the cache.
+	 * 
+	 * @param image	The pixels, or {@code null}.
+	 */
+	public void setImage(IconPixels image) {
+		IconCache.remove(this);
+		this.image = image;
+		source = null;
+		cached = null;
+		bytes = null;
+		setSize(image);
+	}
+	
+	/**
+	 * Sets pixels just decoded from a file, together with the way to decode them
+	 *  again after they are dropped from the cache.
+	 * 
+	 * @param image	The pixels, or {@code null} if they could not be decoded.
+	 * @param source	Decodes the same pixels again.
+	 */
+	public void setImage(IconPixels image, IconSource source) {
+		setImage(null);
+		if (image != null) {
+			this.source = source;
+			cached = new SoftReference<>(image);
+			IconCache.put(this, image);
+			setSize(image);
+		}
+	}
+	
+	/**
+	 * Sets the way to decode the pixels of an entry of a file, without decoding
+	 *  them. Only the headers are read when a file is opened, and the pixels are
+	 *  decoded by the first {@link #getImage()}, if ever.
+	 * 
+	 * @param source	Decodes the pixels.
+	 * @param width	Width in pixels, as found in the header.
+	 * @param height	Height in pixels, as found in the header.
+	 */
+	public void setSource(IconSource source, int width, int height) {
+		setImage(null);
+		this.source = source;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Shares the pixels of another entry, in memory or from its file.
+	 * 
+	 * @param other	The entry with the pixels.
+	 */
+	public void shareImage(DiskIconsView other) {
+		setImage(other.image);
+		source = other.source;
+		cached = other.cached;
+		bytes = other.bytes;
+		width = other.width;
+		height = other.height;
+	}
+	
+	/**
+	 * A copy of this entry that can be changed on its own, like by a writer.
+	 *  Pixels from a file are decoded through this entry, so once for both.
+	 * 
+	 * @return	The new entry.
+	 */
+	public DiskIconsView copy() {
+		final DiskIconsView other = this;
+		DiskIconsView fs = new DiskIconsView();
+		fs.isIcon = isIcon;
+		fs.forIcon = forIcon;
+		fs.offset = offset;
+		fs.length = length;
+		fs.size = size;
+		fs.type = type;
+		fs.description = description;
+		fs.layout = layout;
+		fs.image = image;
+		if (source != null) {
+			fs.source = new IconSource() {
+				@Override
+				public IconPixels decode() throws IOException {
+					return other.getImage();
+				}
+			};
+		}
+		fs.bytes = bytes;
+		fs.width = width;
+		fs.height = height;
+		return fs;
+	}
+	
+	/**
+	 * Keeps the encoded bytes of this entry, set by the reader after the pixels.
+	 * 
+	 * @param bytes	The bytes in the file that was read.
+	 */
+	public void setBytes(IconBytes bytes) {
+		this.bytes = bytes;
+	}
+	
+	/**
+	 * Returns the bytes as read if this entry was not modified, that is if
+	 *  writing it as {@code forIcon} of {@code power} would only encode the
+	 *  same pixels again. Any other entry is decoded and encoded by the writer.
+	 * 
+	 * @param forIcon	The output type, ICON_PNG, ICON_BITMAP or ICON_ARGB.
+	 * @param power	The length of one side.
+	 * @return	The bytes to be copied, or {@code null}.
+	 */
+	public IconBytes getBytes(int forIcon, int power) {
+		return bytes != null && bytes.fits(forIcon, power)? bytes: null;
+	}
+	
+	private void setSize(IconPixels image) {
+		width = image == null? 0: image.getWidth();
+		height = image == null? 0: image.getHeight();
+	}
+	
+	public boolean hasImage() {
+		return image != null || source != null;
+	}
+	
+	public int getImageWidth() {
+		return width;
+	}
+	
+	public int getImageHeight() {
+		return height;
+	}
 	
 	@Override
 	public int compareTo(DiskIconsView other) {
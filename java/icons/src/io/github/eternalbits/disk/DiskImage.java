@@ -18,7 +18,12 @@ package io.github.eternalbits.disk;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 import io.github.eternalbits.icns.IcnsFiles;
 import io.github.eternalbits.ico.IcoFiles;
@@ -31,6 +36,7 @@ import io.github.eternalbits.png.PngFiles;
 public class DiskImage {
 	protected static String INVALID_VALUE = "%s (Mising or invalid value found in %s)";
 	protected static String CANT_INITIALIZE = "Can't initialize %s from %s.";	
+	protected static String TOO_LARGE = "%s (The %s is %d, above the limit of %d)";
 	private static String UNKNOWN_TYPE = "Unknown disk image type";
 
 	/**
@@ -38,22 +44,27 @@ public class DiskImage {
 	 * 
 	 * @param path/file	String/path you want to access DiskIcons.
 	 * @param mode	Access type: "r" for read or "rw" for both.
+	 * @param offHeap	Keep the decoded pixels outside the Java heap until closed.
 	 */
 	public static DiskIcons open(String path, String mode) throws IOException {
 		return open(new File(path), mode);
 	}
 
 	public static DiskIcons open(File file, String mode) throws IOException {
+		return open(file, mode, false);
+	}
+
+	public static DiskIcons open(File file, String mode, boolean offHeap) throws IOException {
 		
 		if (file.length() >= 4) {
 			try (RandomAccessFile media = new RandomAccessFile(file, "r")) {
 				switch (media.readInt()) {
 				case IcnsFiles.ICON_ICNS:							// 'icns' for ICNS
-					return new IcnsFiles(file, mode);
+					return new IcnsFiles(file, mode, offHeap);
 				case IcoFiles.ICON_ICO:								// '....' for ICO
-					return new IcoFiles(file, mode);
+					return new IcoFiles(file, mode, offHeap);
 				case PngFiles.ICON_PGN:								// '%PNG' for PNG
-					return new PngFiles(file, mode);
+					return new PngFiles(file, mode, offHeap);
 				}
 			} catch (WrongHeaderException e) {}
 		}
@@ -61,6 +72,77 @@ public class DiskImage {
 		throw new InitializationException(DiskIcons.class, file.getPath());
 	}
 
+	/**
+	 * Reading DiskIcons from a channel, like memory or a zip file system. The
+	 *  channel is read with positioned reads and it is never closed here.
+	 * 
+	 * @param in	The channel with the icon.
+	 * @param name	A name for the messages, like the name of the file.
+	 * @param offHeap	Keep the decoded pixels outside the Java heap until closed.
+	 */
+	public static DiskIcons open(SeekableByteChannel in, String name, boolean offHeap) throws IOException {
+		
+		if (in.size() >= 4) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			in.position(0);
+			while (magic.hasRemaining() && in.read(magic) > 0);
+			if (!magic.hasRemaining()) {
+				try {
+					switch (magic.getInt(0)) {
+					case IcnsFiles.ICON_ICNS:						// 'icns' for ICNS
+						return new IcnsFiles(in, name, offHeap);
+					case IcoFiles.ICON_ICO:							// '....' for ICO
+						return new IcoFiles(in, name, offHeap);
+					case PngFiles.ICON_PGN:							// '%PNG' for PNG
+						return new PngFiles(in, name, offHeap);
+					}
+				} catch (WrongHeaderException e) {}
+			}
+		}
+		
+		throw new InitializationException(DiskIcons.class, name);
+	}
+
+	/**
+	 * Reading DiskIcons from memory, the bytes from the position to the limit
+	 *  of {@code in}. They are not copied, and must not change while in use.
+	 * 
+	 * @param in	The bytes of the icon.
+	 * @param name	A name for the messages.
+	 */
+	public static DiskIcons open(ByteBuffer in, String name) throws IOException {
+		return open(new BufferChannel(in), name, false);
+	}
+
+	public static DiskIcons open(byte[] in, String name) throws IOException {
+		return open(ByteBuffer.wrap(in), name);
+	}
+
+	/**
+	 * Reading DiskIcons from a stream, like a pipe or a download. The formats
+	 *  need the length and random access, so the stream is read to its end,
+	 *  but never beyond the file limit of {@link IconLimits}. It is not closed.
+	 * 
+	 * @param in	The stream with the icon.
+	 * @param name	A name for the messages.
+	 * @param offHeap	Keep the decoded pixels outside the Java heap until closed.
+	 */
+	public static DiskIcons open(InputStream in, String name) throws IOException {
+		return open(in, name, false);
+	}
+
+	public static DiskIcons open(InputStream in, String name, boolean offHeap) throws IOException {
+		byte[] bytes = new byte[8192];
+		int length = 0;
+		for (int read; (read = in.read(bytes, length, bytes.length - length)) >= 0; ) {
+			length += read;
+			IconLimits.checkFile(name, length);
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, (int) Math.min(2L * length, Integer.MAX_VALUE - 8));
+		}
+		return open(new BufferChannel(ByteBuffer.wrap(bytes, 0, length)), name, offHeap);
+	}
+
 	/**
 	 * Writing DiskIcons.
 	 * 
@@ -86,4 +168,26 @@ public class DiskImage {
 		
 		throw new IllegalArgumentException(String.format("%s: %s", UNKNOWN_TYPE, type));
 	}
+
+	/**
+	 * Writing DiskIcons to a channel, like memory, a pipe, a socket or a zip entry.
+	 * 
+	 * @param type	Access type: icns, ico or png.
+	 * @param to	The channel where it is written, it is not closed.
+	 * @param image	The disk image to be created.
+	 */
+	public static DiskIcons create(String type, WritableByteChannel to, DiskIcons image, String icon) throws IOException, WrongHeaderException {
+		
+		if ("icns".equalsIgnoreCase(type)) {
+			return new IcnsFiles(to, image, icon);
+		}
+		if ("ico".equalsIgnoreCase(type)) {
+			return new IcoFiles(to, image, icon);
+		}
+		if ("png".equalsIgnoreCase(type)) {
+			return new PngFiles(to, image, icon);
+		}
+		
+		throw new IllegalArgumentException(String.format("%s: %s", UNKNOWN_TYPE, type));
+	}
 }
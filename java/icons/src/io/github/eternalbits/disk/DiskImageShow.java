@@ -63,8 +63,8 @@ public class DiskImageShow {
 				show.length		= fs.length;
 				show.type		= fs.type;
 				show.description= fs.description;
-				show.image		= fs.image == null? null: "Buffered " + fs.image.getWidth() + 
-						(fs.image.getWidth() != fs.image.getHeight()? "x" + fs.image.getHeight(): "");
+				show.image		= !fs.hasImage()? null: "Buffered " + fs.getImageWidth() + 
+						(fs.getImageWidth() != fs.getImageHeight()? "x" + fs.getImageHeight(): "");
 				local.add(show);
 			}
 		}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The encoded bytes of one entry, as they are in the file it was read from.
+ *  An entry that is written again with the same encoding and the same size
+ *  has no reason to be decoded, resized and encoded again, so the writers copy
+ *  these bytes instead. Only encodings that mean the same in every format are
+ *  kept: a 32-bit RGBA PNG, a 32-bit bitmap and an Apple ARGB.
+ * <p>
+ */
+public class IconBytes {
+
+	private final DiskIcons owner;				// The file of the bytes
+	private final int offset;					// Where the bytes start
+	private final int length;					// Number of bytes
+	private final int encoding;					// ICON_PNG, ICON_BITMAP or ICON_ARGB
+	private final int power;					// The length of one side
+
+	IconBytes(DiskIcons owner, int offset, int length, int encoding, int power) {
+		this.owner = owner;
+		this.offset = offset;
+		this.length = length;
+		this.encoding = encoding;
+		this.power = power;
+	}
+
+	/**
+	 * True if these bytes are what an entry written as {@code forIcon} of
+	 *  {@code power} would be.
+	 *
+	 * @param forIcon	The output type, ICON_PNG, ICON_BITMAP or ICON_ARGB.
+	 * @param power	The length of one side.
+	 */
+	public boolean fits(int forIcon, int power) {
+		return forIcon == encoding && power == this.power;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Reads the bytes from the file they are in, that is opened again if needed.
+	 *
+	 * @return	A new array with the bytes.
+	 */
+	public byte[] read() throws IOException {
+		return owner.loadIcon(offset, length);
+	}
+
+	/**
+	 * Writes the bytes to {@code out} from the file they are in, that is opened
+	 *  again if needed.
+	 *
+	 * @param out	Where the bytes are written.
+	 */
+	void transferTo(WritableByteChannel out) throws IOException {
+		owner.transferTo(offset, length, out);
+	}
+
+}
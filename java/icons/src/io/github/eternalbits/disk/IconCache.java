@@ -0,0 +1,142 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The decoded pixels of every open entry, shared by all DiskIcons. The most
+ *  recently used pixels are kept up to a budget in bytes, and the least recently
+ *  used are dropped beyond it. A dropped entry is decoded again from its file by
+ *  {@link DiskIconsView#getImage()}, unless the garbage collector has not yet
+ *  cleared the soft reference that each view keeps as a backstop.
+ * <p>
+ * Pixels that cannot be decoded again, like a pasted image, are never here.
+ * <p>
+ * The entries are only weakly referenced: their IconSource keeps the whole
+ *  DiskIcons, and for an icon read from memory all of its bytes, so pixels of
+ *  entries that are no longer used anywhere are dropped as soon as the garbage
+ *  collector clears them, whatever the budget.
+ * <p>
+ */
+public class IconCache {
+	
+	private static final Map<Key, IconPixels> lru = new LinkedHashMap<>(64, 0.75f, true);
+	private static final ReferenceQueue<DiskIconsView> cleared = new ReferenceQueue<>();
+	private static long budget = Runtime.getRuntime().maxMemory() / 4;	// Bytes allowed
+	private static long used = 0;										// Bytes in lru
+	
+	private IconCache() {}
+	
+	/**
+	 * Changes the number of bytes of pixels kept in memory, evicting the least
+	 *  recently used pixels that no longer fit. The default is a quarter of the
+	 *  maximum heap.
+	 * 
+	 * @param bytes	The new budget, in bytes.
+	 */
+	public static synchronized void setBudget(long bytes) {
+		budget = bytes;
+		evict();
+	}
+	
+	public static synchronized long getBudget() {
+		return budget;
+	}
+	
+	public static synchronized long getUsed() {
+		purge();
+		return used;
+	}
+	
+	static synchronized IconPixels get(DiskIconsView fs) {
+		purge();
+		return lru.get(new Key(fs, null));
+	}
+	
+	static synchronized void put(DiskIconsView fs, IconPixels pixels) {
+		purge();
+		IconPixels old = lru.put(new Key(fs, cleared), pixels);
+		if (old != null)
+			used -= old.getLength();
+		used += pixels.getLength();
+		evict();
+	}
+	
+	static synchronized void remove(DiskIconsView fs) {
+		purge();
+		IconPixels old = lru.remove(new Key(fs, null));
+		if (old != null)
+			used -= old.getLength();
+	}
+	
+	/**
+	 * Drops the pixels of the entries that the garbage collector cleared.
+	 */
+	private static void purge() {
+		for (Reference<? extends DiskIconsView> key; (key = cleared.poll()) != null; ) {
+			IconPixels old = lru.remove(key);
+			if (old != null)
+				used -= old.getLength();
+		}
+	}
+	
+	/**
+	 * Drops the least recently used pixels until they fit the budget. The most
+	 *  recent entry always stays, even if it alone is larger than the budget.
+	 */
+	private static void evict() {
+		Iterator<IconPixels> it = lru.values().iterator();
+		while (used > budget && lru.size() > 1 && it.hasNext()) {
+			used -= it.next().getLength();
+			it.remove();
+		}
+	}
+	
+	/**
+	 * A weak reference to an entry, equal to another one of the same entry.
+	 */
+	private static class Key extends WeakReference<DiskIconsView> {
+		private final int hash;
+		
+		Key(DiskIconsView fs, ReferenceQueue<DiskIconsView> queue) {
+			super(fs, queue);
+			hash = System.identityHashCode(fs);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			DiskIconsView fs = get();
+			return fs != null && fs == ((Key) obj).get();
+		}
+	}
+	
+}
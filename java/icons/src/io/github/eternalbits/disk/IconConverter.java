@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts icons in the same process, for an application that embeds the
+ *  converter instead of running the command line. Every call opens its source,
+ *  writes the result and closes the source again, and shares nothing with the
+ *  other calls but the {@link IconCache}, so any number of threads can convert
+ *  at the same time.
+ * <p>
+ * A source is read from a file or from memory, and the result is written to a
+ *  file, replacing it only when it is complete, or returned in memory. What is
+ *  written is an {@link IconPlan}.
+ * <p>
+ */
+public class IconConverter {
+	private static final String NOTHING_TO_WRITE = "%s (The plan leaves no icon to write)";
+	private static final String PLAN_MISMATCH = "%s (The plan %s does not fit its entries)";
+	private static final String MEMORY = "memory";
+	
+	/**
+	 * The formats that can be written.
+	 */
+	public enum Format {
+		ICO, ICNS, PNG;
+		
+		private String type() {
+			return name().toLowerCase();
+		}
+	}
+	
+	private IconConverter() {}
+	
+	/**
+	 * Converts the icon file {@code source} into memory.
+	 * 
+	 * @param source	An ICO, ICNS or PNG file.
+	 * @param format	The format of the result.
+	 * @param plan	The entries of the result.
+	 * @return	The bytes of the result, from position 0 to the limit.
+	 * @throws IllegalArgumentException	If the plan does not fit the source.
+	 */
+	public static ByteBuffer convert(Path source, Format format, IconPlan plan) throws IOException {
+		try (DiskIcons image = DiskImage.open(source.toFile(), "r")) {
+			return convert(image, format, plan);
+		}
+	}
+	
+	/**
+	 * Converts the icon in memory {@code source} into memory.
+	 * 
+	 * @param source	An ICO, ICNS or PNG, from its position to its limit. It is
+	 *  neither copied nor changed.
+	 * @param format	The format of the result.
+	 * @param plan	The entries of the result.
+	 * @return	The bytes of the result, from position 0 to the limit.
+	 * @throws IllegalArgumentException	If the plan does not fit the source.
+	 */
+	public static ByteBuffer convert(ByteBuffer source, Format format, IconPlan plan) throws IOException {
+		try (DiskIcons image = DiskImage.open(source.duplicate(), MEMORY)) {
+			return convert(image, format, plan);
+		}
+	}
+	
+	/**
+	 * Converts the icon file {@code source} into the file {@code target}. The
+	 *  target is replaced only once the result is complete.
+	 * 
+	 * @param source	An ICO, ICNS or PNG file.
+	 * @param target	The file to be written, it can be the source.
+	 * @param format	The format of the result.
+	 * @param plan	The entries of the result.
+	 * @return	The path {@code target}.
+	 * @throws IllegalArgumentException	If the plan does not fit the source.
+	 */
+	public static Path convert(Path source, Path target, Format format, IconPlan plan) throws IOException {
+		try (DiskIcons image = DiskImage.open(source.toFile(), "r")) {
+			try (DiskIcons clone = DiskImage.create(format.type(), target.toFile(), image, plan.toPhrase())) {
+				if (!clone.done)
+					throw new IOException(String.format(NOTHING_TO_WRITE, source));
+			}
+		} catch (WrongHeaderException e) {
+			throw new IllegalArgumentException(String.format(PLAN_MISMATCH, source, plan), e);
+		}
+		return target;
+	}
+	
+	/**
+	 * Publishes the entries of the icon file {@code source} as they are decoded,
+	 *  first all of them without pixels and then each one with its pixels. The
+	 *  file is read again for each subscriber.
+	 * 
+	 * @param source	An ICO, ICNS or PNG file.
+	 * @param bySize	Decode and publish the smaller entries first.
+	 * @return	The publisher of the entries.
+	 */
+	public static Flow.Publisher<DecodedEntry> decode(final Path source, boolean bySize) {
+		return new IconPublisher(new IconPublisher.Opener() {
+			@Override
+			public DiskIcons open() throws IOException {
+				return DiskImage.open(source.toFile(), "r");
+			}
+		}, bySize, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Publishes the entries of the icon in memory {@code source} as they are
+	 *  decoded, first all of them without pixels and then each one with its pixels.
+	 * 
+	 * @param source	An ICO, ICNS or PNG, from its position to its limit. It is
+	 *  neither copied nor changed, and must not change while it is published.
+	 * @param bySize	Decode and publish the smaller entries first.
+	 * @return	The publisher of the entries.
+	 */
+	public static Flow.Publisher<DecodedEntry> decode(ByteBuffer source, boolean bySize) {
+		final ByteBuffer bytes = source.duplicate();
+		return new IconPublisher(new IconPublisher.Opener() {
+			@Override
+			public DiskIcons open() throws IOException {
+				return DiskImage.open(bytes.duplicate(), MEMORY);
+			}
+		}, bySize, ForkJoinPool.commonPool());
+	}
+	
+	private static ByteBuffer convert(DiskIcons image, Format format, IconPlan plan) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DiskIcons clone = DiskImage.create(format.type(), Channels.newChannel(bytes), image, plan.toPhrase())) {
+			if (!clone.done)
+				throw new IOException(String.format(NOTHING_TO_WRITE, image.getPath()));
+		} catch (WrongHeaderException e) {
+			throw new IllegalArgumentException(String.format(PLAN_MISMATCH, image.getPath(), plan), e);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+	
+}
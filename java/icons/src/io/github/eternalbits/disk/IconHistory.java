@@ -0,0 +1,174 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The undo and redo stacks of the entries of one DiskIcons. An edit only
+ *  remembers the few fields of the entry that it changed, or the entry that it
+ *  added, and undoing swaps them back. The pixels are never copied: an entry
+ *  keeps its own, and an added entry is only referenced by its edit. Memory
+ *  therefore grows with the number of edits, up to {@code LIMIT}, and not with
+ *  the size of the icons.
+ * <p>
+ */
+public class IconHistory {
+	static final int LIMIT = 256;				// Edits that can be undone
+
+	private static final Edit LOST = new Edit(null, false, -1);
+
+	private final DiskIcons owner;
+	private final Deque<Edit> undo = new ArrayDeque<Edit>();
+	private final Deque<Edit> redo = new ArrayDeque<Edit>();
+	private Edit saved = null;					// The last edit when saved, null if it is the file as read
+
+	IconHistory(DiskIcons owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * Remembers the state of {@code fs} before it is changed by the caller. Only
+	 *  isIcon, forIcon, size, type, description and layout can be undone.
+	 *
+	 * @param fs	The entry about to be changed.
+	 */
+	public void change(DiskIconsView fs) {
+		push(new Edit(fs, false, -1));
+	}
+
+	/**
+	 * Adds {@code fs} at the end of the entries, as {@link DiskIcons#putIcon}
+	 *  does, so that it can be removed again by {@link #undo()}.
+	 *
+	 * @param fs	The new entry, like a pasted image.
+	 */
+	public void add(DiskIconsView fs) {
+		List<DiskIconsView> files = owner.getFiles();
+		int index = files.size();
+		owner.putIcon(fs);
+		push(new Edit(fs, true, index));
+	}
+
+	private void push(Edit edit) {
+		for (Edit e: redo)
+			if (e == saved) saved = LOST;					// The saved state can no longer be reached
+		redo.clear();
+		undo.push(edit);
+		if (undo.size() > LIMIT) {
+			Edit e = undo.removeLast();
+			if (saved == null) saved = LOST;
+			else if (saved == e) saved = null;
+		}
+	}
+
+	public boolean canUndo() {
+		return !undo.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return !redo.isEmpty();
+	}
+
+	/**
+	 * Reverts the last edit.
+	 *
+	 * @return	The entry that was changed, or {@code null} if there was nothing to undo.
+	 */
+	public DiskIconsView undo() {
+		if (undo.isEmpty())
+			return null;
+		Edit edit = undo.pop();
+		edit.revert(owner.getFiles());
+		redo.push(edit);
+		return edit.fs;
+	}
+
+	/**
+	 * Applies again the last edit that was undone.
+	 *
+	 * @return	The entry that was changed, or {@code null} if there was nothing to redo.
+	 */
+	public DiskIconsView redo() {
+		if (redo.isEmpty())
+			return null;
+		Edit edit = redo.pop();
+		edit.revert(owner.getFiles());
+		undo.push(edit);
+		return edit.fs;
+	}
+
+	/**
+	 * True if the entries are not the same as when they were read or last saved.
+	 */
+	public boolean isChanged() {
+		return undo.peek() != saved;
+	}
+
+	/**
+	 * Marks the current entries as the ones in the file.
+	 */
+	public void setSaved() {
+		saved = undo.peek();
+	}
+
+	/**
+	 * One edit. Reverting it swaps the remembered fields with those of the
+	 *  entry, so the same object reverts it back when it is redone.
+	 */
+	private static class Edit {
+		final DiskIconsView fs;
+		final boolean added;					// The entry was added, rather than changed
+		final int index;						// Where it was added
+		boolean present = true;					// An added entry is in the list
+
+		int isIcon, forIcon, size;
+		String type, description, layout;
+
+		Edit(DiskIconsView fs, boolean added, int index) {
+			this.fs = fs;
+			this.added = added;
+			this.index = index;
+			if (fs != null && !added) {
+				isIcon = fs.isIcon;
+				forIcon = fs.forIcon;
+				size = fs.size;
+				type = fs.type;
+				description = fs.description;
+				layout = fs.layout;
+			}
+		}
+
+		void revert(List<DiskIconsView> files) {
+			if (added) {
+				if (present) files.remove(fs);
+				else files.add(Math.min(index, files.size()), fs);
+				present = !present;
+				return;
+			}
+			int i = fs.isIcon; fs.isIcon = isIcon; isIcon = i;
+			i = fs.forIcon; fs.forIcon = forIcon; forIcon = i;
+			i = fs.size; fs.size = size; size = i;
+			String s = fs.type; fs.type = type; type = s;
+			s = fs.description; fs.description = description; description = s;
+			s = fs.layout; fs.layout = layout; layout = s;
+		}
+	}
+
+}
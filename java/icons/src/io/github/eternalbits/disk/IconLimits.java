@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+/**
+ * The largest file, entry and image that a DiskIcons accepts to read. Every
+ *  length and size of a header is checked here before anything is allocated
+ *  for it, so that a hostile or damaged file fails with an exception instead
+ *  of exhausting the memory. The defaults are far above any real icon.
+ * <p>
+ */
+public class IconLimits {
+
+	private static long file = 64L << 20;			// Bytes in one file, 64 MB
+	private static long entry = 32L << 20;			// Bytes in one entry, 32 MB
+	private static long pixels = 4096L * 4096;		// Pixels in one image, 64 MB decoded
+
+	private IconLimits() {}
+
+	public static synchronized void setFile(long bytes) {
+		file = bytes;
+	}
+
+	public static synchronized long getFile() {
+		return file;
+	}
+
+	public static synchronized void setEntry(long bytes) {
+		entry = bytes;
+	}
+
+	public static synchronized long getEntry() {
+		return entry;
+	}
+
+	public static synchronized void setPixels(long count) {
+		pixels = count;
+	}
+
+	public static synchronized long getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Checks the length of a whole file, before its header is read.
+	 *
+	 * @param path	The path of the file, for the message.
+	 * @param length	The length of the file, in bytes.
+	 */
+	public static void checkFile(String path, long length) throws InitializationException {
+		check(path, "file length", length, getFile());
+	}
+
+	/**
+	 * Checks the length of one entry, as found in a directory or chunk header.
+	 *
+	 * @param path	The path of the file, for the message.
+	 * @param length	The length of the entry, in bytes.
+	 */
+	public static void checkEntry(String path, long length) throws InitializationException {
+		check(path, "entry length", length, getEntry());
+	}
+
+	/**
+	 * Checks the size of one image, as found in a PNG or bitmap header.
+	 *
+	 * @param path	The path of the file, for the message.
+	 * @param width	Width in pixels.
+	 * @param height	Height in pixels.
+	 */
+	public static void checkPixels(String path, long width, long height) throws InitializationException {
+		check(path, "pixel count of " + width + "x" + height, width * height, getPixels());
+	}
+
+	private static void check(String path, String what, long value, long limit) throws InitializationException {
+		if (value > limit)
+			throw new InitializationException(String.format(DiskImage.TOO_LARGE, path, what, value, limit));
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bytes of a file being written, the header and directory followed by the
+ *  entries, kept as a list of ByteBuffers until all of them are known. A writer
+ *  fills the directory before anything is written, so it never seeks back.
+ *  Entries reused as they were read are kept as their {@link IconBytes}, and
+ *  only copied from the file they are in when written.
+ * <p>
+ * The file is written with gathering writes into a temporary file next to it,
+ *  forced to the disk once and then renamed over the file, so that an icon is
+ *  always either the old one or the new one, and never half written. It can
+ *  also be written to any WritableByteChannel, as it never needs a seek.
+ * <p>
+ */
+public class IconOutput {
+
+	private final List<Object> parts = new ArrayList<Object>();	// ByteBuffers and IconBytes, in order
+	private long length = 0;					// Bytes in all the parts
+
+	/**
+	 * Adds {@code buffer}, from its position to its limit, to the end of the file.
+	 *  The buffer must not be changed by the caller after it is written, but it
+	 *  can be filled before that, like a directory with the offsets of the entries.
+	 *
+	 * @param buffer	The bytes to be added.
+	 * @return	The buffer {@code buffer}.
+	 */
+	public ByteBuffer add(ByteBuffer buffer) {
+		parts.add(buffer);
+		length += buffer.remaining();
+		return buffer;
+	}
+
+	/**
+	 * Adds the bytes of an entry as they were read to the end of the file. They
+	 *  are transferred from their file to the output when it is written, without
+	 *  going through the heap where the channels allow it.
+	 *
+	 * @param bytes	The bytes to be added.
+	 */
+	public void add(IconBytes bytes) {
+		parts.add(bytes);
+		length += bytes.getLength();
+	}
+
+	public ByteBuffer add(byte[] bytes) {
+		return add(ByteBuffer.wrap(bytes));
+	}
+
+	public ByteBuffer add(byte[] bytes, int offset, int length) {
+		return add(ByteBuffer.wrap(bytes, offset, length));
+	}
+
+	/**
+	 * The length of the file, and the offset of the next part to be added.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Writes all the parts to {@code file}, replacing it. The new file keeps
+	 *  the permissions of the old one, where the file system has them. Whatever
+	 *  is still read from the old file is read into memory before it is replaced,
+	 *  see {@link DiskIcons#release(File)}, which also closes it where it was
+	 *  open, since an open file cannot be replaced on Windows.
+	 *
+	 * @param file	The file to be written.
+	 */
+	public void writeTo(File file) throws IOException {
+		Path path = file.getAbsoluteFile().toPath();
+		Path temp = createTemp(path);
+		try {
+			try {
+				if (Files.exists(path))
+					Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+			} catch (UnsupportedOperationException e) {}
+			try (RandomAccessFile to = new RandomAccessFile(temp.toFile(), "rw")) {
+				to.setLength(length);
+				FileChannel out = to.getChannel();
+				writeTo(out);
+				out.force(true);
+			}
+			DiskIcons.release(file);
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			} catch (FileSystemException e) {
+				if (!Files.exists(path)) throw e;
+				copyOver(temp, path);											// Still open elsewhere, like by another program on Windows
+			}
+			forceDirectory(path.getParent());
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes all the parts to {@code out}, like memory, a pipe or a socket. The
+	 *  directory is already filled, so the bytes go out in order and nothing is
+	 *  ever read back. A GatheringByteChannel gets the buffers between two
+	 *  reused entries with gathering writes, and the reused entries are
+	 *  transferred from their file. The channel is not closed.
+	 *
+	 * @param out	Where the file is written.
+	 */
+	public void writeTo(WritableByteChannel out) throws IOException {
+		List<ByteBuffer> run = new ArrayList<ByteBuffer>();
+		for (Object part: parts) {
+			if (part instanceof ByteBuffer) {
+				run.add(((ByteBuffer) part).duplicate());					// So that their positions are left untouched
+				continue;
+			}
+			write(run, out);
+			run.clear();
+			((IconBytes) part).transferTo(out);
+		}
+		write(run, out);
+	}
+
+	private static void write(List<ByteBuffer> run, WritableByteChannel out) throws IOException {
+		ByteBuffer[] array = run.toArray(new ByteBuffer[run.size()]);
+		if (out instanceof GatheringByteChannel) {
+			GatheringByteChannel gather = (GatheringByteChannel) out;
+			for (int i = 0; i < array.length; ) {
+				gather.write(array, i, array.length - i);
+				while (i < array.length && !array[i].hasRemaining())
+					i++;
+			}
+		}
+		else {
+			for (ByteBuffer buffer: array)
+				while (buffer.hasRemaining())
+					out.write(buffer);
+		}
+	}
+
+	/**
+	 * Copies {@code temp} over the content of {@code path}, when it cannot be
+	 *  renamed over it. The file is then not replaced atomically.
+	 */
+	private static void copyOver(Path temp, Path path) throws IOException {
+		try (FileChannel in = FileChannel.open(temp, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			for (long done = 0; done < size; )
+				done += in.transferTo(done, size - done, out);
+			out.force(true);
+		}
+	}
+
+	/**
+	 * Forces the directory of a renamed file to the disk, so that the rename
+	 *  survives a crash. Not every system can open a directory, like Windows,
+	 *  and the rename is then as durable as the file system makes it.
+	 */
+	private static void forceDirectory(Path dir) {
+		if (dir == null)
+			return;
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Creates an empty file in the directory of {@code path}, where it can be
+	 *  renamed to {@code path}.
+	 */
+	private static Path createTemp(Path path) throws IOException {
+		for (int i = 0; ; i++) {
+			Path temp = path.resolveSibling("." + path.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+			try {
+				Files.createFile(temp);
+			} catch (FileAlreadyExistsException e) {
+				if (i < 16) continue;
+				throw e;
+			}
+			return temp;
+		}
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The pixels of one icon, as straight (not premultiplied) packed ARGB with one
+ *  integer per pixel. Every codec reads and writes this, and a BufferedImage is
+ *  only created at the GUI boundary with {@link #toImage()}.
+ * <p>
+ * The rows are kept in chunks of at most {@code CHUNK} integers, so that even
+ *  a 1024 by 1024 icon is made of arrays small enough to never be a humongous
+ *  allocation for the garbage collector.
+ * <p>
+ * Pixels created by a DiskIcons opened off-heap keep their chunks in direct
+ *  buffers of a {@link PixelArena} instead, and are released with it.
+ * <p>
+ */
+public class IconPixels {
+	static final int CHUNK = 1 << 16;			// 256 KB, half of the smallest G1 region
+
+	private final int width;					// Width in pixels
+	private final int height;					// Height in pixels
+	private final int rows;						// Rows in each chunk
+	private final int[][] chunks;				// The pixels, rows after rows
+	private final IntBuffer[] buffers;			// The same, when off-heap
+	private boolean released = false;			// The arena was closed
+
+	/**
+	 * Creates transparent pixels of {@code width} by {@code height}.
+	 *
+	 * @param width	Width in pixels.
+	 * @param height	Height in pixels.
+	 */
+	public IconPixels(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException(width + "x" + height);
+		this.width = width;
+		this.height = height;
+		rows = Math.max(1, CHUNK / width);
+		chunks = new int[(height + rows - 1) / rows][];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = new int[Math.min(rows, height - i * rows) * width];
+		buffers = null;
+	}
+
+	/**
+	 * Creates transparent pixels with the chunks borrowed from {@code arena}.
+	 */
+	IconPixels(int width, int height, PixelArena arena) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException(width + "x" + height);
+		this.width = width;
+		this.height = height;
+		rows = Math.max(1, CHUNK / width);
+		buffers = new IntBuffer[(height + rows - 1) / rows];
+		for (int i = 0; i < buffers.length; i++)
+			buffers[i] = arena.chunk(Math.min(rows, height - i * rows) * width);
+		chunks = null;
+	}
+
+	/**
+	 * Called by the arena when it is closed, the chunks may be reused from now on.
+	 */
+	void release() {
+		released = true;
+		Arrays.fill(buffers, null);
+	}
+
+	/**
+	 * True if these pixels were off-heap and their DiskIcons was closed.
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+	private IntBuffer buffer(int y) {
+		if (released)
+			throw new IllegalStateException("Pixels used after their DiskIcons was closed");
+		return buffers[y / rows];
+	}
+
+	/**
+	 * Copies a BufferedImage of any type, like the one of the clipboard or of
+	 *  ImageIO, into new pixels.
+	 *
+	 * @param image	The image to be copied.
+	 * @return	The pixels of the image.
+	 */
+	public static IconPixels of(BufferedImage image) {
+		return of(image, new IconPixels(image.getWidth(), image.getHeight()));
+	}
+
+	/**
+	 * Copies a BufferedImage into {@code pixels}, that must have the same size.
+	 *
+	 * @param image	The image to be copied.
+	 * @param pixels	Where the image is copied.
+	 * @return	The pixels {@code pixels}.
+	 */
+	public static IconPixels of(BufferedImage image, IconPixels pixels) {
+		int[] row = new int[pixels.width];
+		for (int y = 0; y < pixels.height; y++) {
+			image.getRGB(0, y, pixels.width, 1, row, 0, pixels.width);
+			pixels.setRow(y, row);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns a new {@code TYPE_INT_ARGB} BufferedImage with a copy of the pixels,
+	 *  to be shown or to be placed on the clipboard.
+	 *
+	 * @return	The BufferedImage.
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < height; y++)
+			getRow(y, data, y * width);
+		return image;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * The number of bytes held by the pixels.
+	 */
+	public long getLength() {
+		return 4L * width * height;
+	}
+
+	public int getArgb(int x, int y) {
+		if (chunks == null)
+			return buffer(y).get((y % rows) * width + x);
+		return chunks[y / rows][(y % rows) * width + x];
+	}
+
+	public void setArgb(int x, int y, int argb) {
+		if (chunks == null)
+			buffer(y).put((y % rows) * width + x, argb);
+		else
+			chunks[y / rows][(y % rows) * width + x] = argb;
+	}
+
+	/**
+	 * Copies the row {@code y} to {@code dst}, starting at {@code off}.
+	 */
+	public void getRow(int y, int[] dst, int off) {
+		if (chunks == null) {
+			IntBuffer buffer = buffer(y);
+			for (int x = 0, i = (y % rows) * width; x < width; x++, i++)
+				dst[off + x] = buffer.get(i);
+		}
+		else System.arraycopy(chunks[y / rows], (y % rows) * width, dst, off, width);
+	}
+
+	public void getRow(int y, int[] dst) {
+		getRow(y, dst, 0);
+	}
+
+	/**
+	 * Copies {@code src}, starting at {@code off}, to the row {@code y}.
+	 */
+	public void setRow(int y, int[] src, int off) {
+		if (chunks == null) {
+			IntBuffer buffer = buffer(y);
+			for (int x = 0, i = (y % rows) * width; x < width; x++, i++)
+				buffer.put(i, src[off + x]);
+		}
+		else System.arraycopy(src, off, chunks[y / rows], (y % rows) * width, width);
+	}
+
+	public void setRow(int y, int[] src) {
+		setRow(y, src, 0);
+	}
+
+	/**
+	 * Clears all the pixels to transparent.
+	 */
+	public void clear() {
+		if (chunks == null) {
+			for (int y = 0; y < height; y += rows) {
+				IntBuffer buffer = buffer(y);
+				for (int i = 0; i < buffer.limit(); i++)
+					buffer.put(i, 0);
+			}
+		}
+		else {
+			for (int[] chunk: chunks)
+				Arrays.fill(chunk, 0);
+		}
+	}
+
+	/**
+	 * True if some pixel is fully transparent but still has a color, usually
+	 *  left there by the tool that edited the icon.
+	 */
+	public boolean hasHiddenColor() {
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			getRow(y, row);
+			for (int x = 0; x < width; x++)
+				if ((row[x] >>> 24) == 0 && row[x] != 0)
+					return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets to zero the color of every fully transparent pixel. Nothing that can
+	 *  be seen changes, but the runs of the Apple encoder and the filters of PNG
+	 *  are no longer broken by a color that is never shown.
+	 *
+	 * @return	These pixels.
+	 */
+	public IconPixels clearHiddenColor() {
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			getRow(y, row);
+			boolean hidden = false;
+			for (int x = 0; x < width; x++) {
+				if ((row[x] >>> 24) == 0 && row[x] != 0) {
+					row[x] = 0;
+					hidden = true;
+				}
+			}
+			if (hidden)
+				setRow(y, row);
+		}
+		return this;
+	}
+	
+	/**
+	 * Resizes these pixels into {@code to} by pixel replication, the same
+	 *  nearest neighbour that {@code Image.SCALE_DEFAULT} used to give. Each
+	 *  pixel of {@code to} is the source pixel under its center, so it is copied
+	 *  exactly, alpha and color.
+	 *
+	 * @param to	The resized pixels, already with the new width and height.
+	 * @return	The pixels {@code to}.
+	 */
+	public IconPixels scale(IconPixels to) {
+		int[] cols = new int[to.width];
+		for (int dx = 0; dx < to.width; dx++)
+			cols[dx] = (int) ((2L * dx * width + width) / (2L * to.width));
+		int[] src = new int[width];
+		int[] dst = new int[to.width];
+		int last = -1;
+		for (int dy = 0; dy < to.height; dy++) {
+			int sy = (int) ((2L * dy * height + height) / (2L * to.height));
+			if (sy != last) {
+				getRow(sy, src);
+				for (int dx = 0; dx < to.width; dx++)
+					dst[dx] = src[cols[dx]];
+				last = sy;
+			}
+			to.setRow(dy, dst);
+		}
+		return to;
+	}
+
+}
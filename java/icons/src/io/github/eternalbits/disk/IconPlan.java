@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link IconConverter} writes: the entries of the source that are
+ *  changed or removed, and the entries that are added, resized from the largest
+ *  image of the source. The entries are numbered as in {@link DiskIcons#getFiles()},
+ *  and those left out of the plan are written as they are. A plan is immutable,
+ *  each method returns a new one, so it can be shared by many threads.
+ * <p>
+ * It is the typed form of the {@code --icon} phrase of the command line, so
+ *  {@code IconPlan.all().change(2, new Entry(Encoding.BITMAP)).remove(3)} is
+ *  the same as {@code 2=bit;3=*}.
+ * <p>
+ */
+public class IconPlan {
+	private static final IconPlan ALL = new IconPlan(Collections.<String>emptyList());
+	
+	/**
+	 * How an entry is encoded.
+	 */
+	public enum Encoding {
+		PNG("png"),
+		BITMAP("bit"),							// 32-bit bitmap for ICO, ARGB or APPLE for ICNS
+		AUTO("auto");							// The smaller of PNG and BITMAP
+		
+		private final String word;
+		
+		Encoding(String word) {
+			this.word = word;
+		}
+	}
+	
+	/**
+	 * The encoding, size and ICNS type of an entry, each {@code null} or
+	 *  0 to keep the one of the source.
+	 */
+	public static class Entry {
+		private final Encoding encoding;
+		private final int size;
+		private final String type;
+		
+		/**
+		 * @param encoding	The encoding, or {@code null}.
+		 * @param size	The length of one side in pixels, or 0.
+		 * @param type	The ICNS type, like "ic08", or {@code null}.
+		 */
+		public Entry(Encoding encoding, int size, String type) {
+			if (size < 0)
+				throw new IllegalArgumentException("size " + size);
+			if (type != null && (!type.matches("[\\p{Graph} ]{3,4}") || type.matches(".*[;:=*?].*") 
+					|| type.toLowerCase().matches("png|bit|auto") || Character.isDigit(type.charAt(0))))
+				throw new IllegalArgumentException("type " + type);
+			this.encoding = encoding;
+			this.size = size;
+			this.type = type;
+		}
+		
+		public Entry(Encoding encoding, int size) {
+			this(encoding, size, null);
+		}
+		
+		public Entry(Encoding encoding) {
+			this(encoding, 0, null);
+		}
+		
+		public Encoding getEncoding() {
+			return encoding;
+		}
+		
+		public int getSize() {
+			return size;
+		}
+		
+		public String getType() {
+			return type;
+		}
+		
+		private String phrase() {
+			List<String> words = new ArrayList<String>();
+			if (type != null) words.add(type);
+			if (encoding != null) words.add(encoding.word);
+			if (size != 0) words.add(Integer.toString(size));
+			return String.join(":", words);
+		}
+	}
+	
+	private final List<String> items;			// The items of the phrase, in order
+	
+	private IconPlan(List<String> items) {
+		this.items = items;
+	}
+	
+	/**
+	 * The plan that writes every entry of the source as it is.
+	 */
+	public static IconPlan all() {
+		return ALL;
+	}
+	
+	/**
+	 * Changes the entry {@code index} of the source.
+	 * 
+	 * @param index	The number of the entry.
+	 * @param entry	What is changed, at least one of encoding, size or type.
+	 */
+	public IconPlan change(int index, Entry entry) {
+		if (index < 0)
+			throw new IllegalArgumentException("index " + index);
+		if (entry.phrase().isEmpty())
+			throw new IllegalArgumentException("entry");
+		return with(index + "=" + entry.phrase());
+	}
+	
+	/**
+	 * Leaves out the entry {@code index} of the source.
+	 * 
+	 * @param index	The number of the entry.
+	 */
+	public IconPlan remove(int index) {
+		if (index < 0)
+			throw new IllegalArgumentException("index " + index);
+		return with(index + "=*");
+	}
+	
+	/**
+	 * Adds an entry made from the largest image of the source, as a PNG of
+	 *  its size unless {@code entry} says otherwise.
+	 * 
+	 * @param entry	The encoding, size and type of the new entry.
+	 */
+	public IconPlan add(Entry entry) {
+		return with("?=" + (entry.phrase().isEmpty()? Encoding.PNG.word: entry.phrase()));
+	}
+	
+	private IconPlan with(String item) {
+		List<String> items = new ArrayList<String>(this.items);
+		items.add(item);
+		return new IconPlan(Collections.unmodifiableList(items));
+	}
+	
+	/**
+	 * The same plan as an {@code --icon} phrase, or {@code null} for {@link #all()}.
+	 */
+	public String toPhrase() {
+		return items.isEmpty()? null: String.join(";", items);
+	}
+	
+	@Override
+	public String toString() {
+		return String.valueOf(toPhrase());
+	}
+	
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the entries of an icon while they are decoded. Each subscriber
+ *  gets its own reading of the source: the header is read and every entry with
+ *  an image is published at once, without pixels, and then the entries are
+ *  decoded in parallel on the executor and published again, each with its
+ *  pixels, as soon as it is decoded, or with {@code null} pixels if it could
+ *  not be decoded. The decoders of one source share its
+ *  file without a common lock, see {@link DiskIcons#source}. With
+ *  {@code bySize} the smaller entries are submitted first and published in
+ *  that order: the 32 pixels icon is decoded next to the 1024 pixels one,
+ *  and only waits for the entries smaller than itself.
+ * <p>
+ * The subscriber is served by a {@link SubmissionPublisher}, that keeps the
+ *  entries that were not requested yet. The source is closed once everything
+ *  is published, and the pixels stay valid after that.
+ * <p>
+ */
+class IconPublisher implements Flow.Publisher<DecodedEntry> {
+	
+	/**
+	 * Opens the source for one subscriber.
+	 */
+	interface Opener {
+		DiskIcons open() throws IOException;
+	}
+	
+	private final Opener source;
+	private final boolean bySize;
+	private final Executor executor;
+	
+	IconPublisher(Opener source, boolean bySize, Executor executor) {
+		this.source = source;
+		this.bySize = bySize;
+		this.executor = executor;
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super DecodedEntry> subscriber) {
+		final SubmissionPublisher<DecodedEntry> publisher = new SubmissionPublisher<DecodedEntry>(executor, Flow.defaultBufferSize());
+		publisher.subscribe(subscriber);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				publish(publisher);
+			}
+		});
+	}
+	
+	/**
+	 * Reads the source and publishes its entries, then closes it.
+	 */
+	private void publish(final SubmissionPublisher<DecodedEntry> publisher) {
+		final DiskIcons image;
+		try {
+			image = source.open();
+		} catch (IOException | RuntimeException e) {
+			publisher.closeExceptionally(e);
+			return;
+		}
+		
+		List<DecodedEntry> entries = new ArrayList<DecodedEntry>();
+		final List<DiskIconsView> files = image.getFiles();
+		for (int i = 0; files != null && i < files.size(); i++) {
+			if (files.get(i).hasImage()) {
+				DecodedEntry entry = new DecodedEntry(i, files.get(i));
+				entries.add(entry);
+				publisher.submit(entry);
+			}
+		}
+		if (bySize) {
+			Collections.sort(entries, new Comparator<DecodedEntry>() {
+				@Override
+				public int compare(DecodedEntry a, DecodedEntry b) {
+					return Long.compare((long) a.getWidth() * a.getHeight(), (long) b.getWidth() * b.getHeight());
+				}
+			});
+		}
+		
+		// Every entry is decoded at once. In size order each one is published
+		//  after the one before it, otherwise as soon as it is decoded. An entry
+		//  that cannot be decoded is published without pixels in both orders.
+		final Consumer<DecodedEntry> submit = new Consumer<DecodedEntry>() {
+			@Override
+			public void accept(DecodedEntry entry) {
+				if (publisher.hasSubscribers())
+					publisher.submit(entry);
+			}
+		};
+		CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+		List<CompletableFuture<Void>> published = new ArrayList<CompletableFuture<Void>>();
+		for (final DecodedEntry entry: entries) {
+			CompletableFuture<DecodedEntry> decoded = CompletableFuture.supplyAsync(new Supplier<DecodedEntry>() {
+				@Override
+				public DecodedEntry get() {
+					if (!publisher.hasSubscribers())
+						return entry;
+					try {
+						return entry.decoded(files.get(entry.getIndex()).getImage());
+					} catch (IOException e) {
+						return entry.decoded(null);
+					}
+				}
+			}, executor);
+			if (bySize) {
+				previous = previous.thenCombine(decoded, new BiFunction<Void, DecodedEntry, Void>() {
+					@Override
+					public Void apply(Void none, DecodedEntry entry) {
+						submit.accept(entry);
+						return null;
+					}
+				});
+				published.add(previous);
+			}
+			else published.add(decoded.thenAccept(submit));
+		}
+		
+		CompletableFuture.allOf(published.toArray(new CompletableFuture<?>[published.size()]))
+				.whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void none, Throwable failure) {
+				try {
+					image.close();
+				} catch (IOException e) {
+					if (failure == null) failure = e;
+				}
+				if (failure instanceof CompletionException && failure.getCause() != null)
+					failure = failure.getCause();
+				if (failure == null) publisher.close();
+				else publisher.closeExceptionally(failure);
+			}
+		});
+	}
+	
+}
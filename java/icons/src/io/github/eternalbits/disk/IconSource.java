@@ -0,0 +1,31 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.io.IOException;
+
+/**
+ * Decodes the pixels of one entry from its file, so that they can be dropped
+ *  from memory and decoded again when needed. See {@link DiskIcons#source}.
+ * <p>
+ */
+@FunctionalInterface
+public interface IconSource {
+	
+	IconPixels decode() throws IOException;
+	
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.disk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the off-heap chunks of the {@link IconPixels} decoded by one DiskIcons,
+ *  and gives them back when that DiskIcons is closed. Java 11 cannot free a
+ *  direct buffer on demand, so instead of waiting for the garbage collector the
+ *  chunks go to a shared pool, sized by powers of two, and the next arena takes
+ *  them from there. Chunks beyond {@code POOL_LIMIT} are simply dropped.
+ * <p>
+ * Pixels of an arena are only valid until it is closed, any later access
+ *  throws IllegalStateException.
+ * <p>
+ */
+class PixelArena implements AutoCloseable {
+	static final long POOL_LIMIT = 64L << 20;		// Bytes kept in the shared pool, 64 MB
+
+	private static final Map<Integer, Queue<ByteBuffer>> pool = new ConcurrentHashMap<>();
+	private static final AtomicLong pooled = new AtomicLong();
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private final List<IconPixels> pixels = new ArrayList<>();
+	private boolean closed = false;
+
+	/**
+	 * Creates transparent pixels whose chunks live in this arena.
+	 *
+	 * @param width	Width in pixels.
+	 * @param height	Height in pixels.
+	 * @return	The new pixels.
+	 */
+	synchronized IconPixels newPixels(int width, int height) {
+		if (closed)
+			throw new IllegalStateException("Arena is closed");
+		IconPixels image = new IconPixels(width, height, this);
+		pixels.add(image);
+		return image;
+	}
+
+	/**
+	 * Borrows a zeroed chunk of at least {@code ints} integers in native order.
+	 */
+	synchronized IntBuffer chunk(int ints) {
+		int size = Math.max(8, Integer.highestOneBit(4 * ints - 1) << 1);
+		Queue<ByteBuffer> queue = pool.get(size);
+		ByteBuffer buffer = queue == null? null: queue.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		} else {
+			pooled.addAndGet(-size);
+			buffer.clear();
+			for (int i = 0; i < size; i += 8)
+				buffer.putLong(i, 0);
+		}
+		chunks.add(buffer);
+		buffer.limit(4 * ints);
+		return buffer.asIntBuffer();
+	}
+
+	/**
+	 * Releases every pixels of this arena and returns the chunks to the pool.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		for (IconPixels image: pixels)
+			image.release();
+		pixels.clear();
+		for (ByteBuffer buffer: chunks) {
+			int size = buffer.capacity();
+			if (pooled.addAndGet(size) > POOL_LIMIT) {
+				pooled.addAndGet(-size);
+				continue;
+			}
+			pool.computeIfAbsent(size, k -> new ConcurrentLinkedQueue<>()).add(buffer);
+		}
+		chunks.clear();
+	}
+
+}
@@ -16,19 +16,31 @@
 
 package io.github.eternalbits.icns;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import io.github.eternalbits.apple.AppHeader;
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconBytes;
+import io.github.eternalbits.disk.IconLimits;
+import io.github.eternalbits.disk.IconOutput;
+import io.github.eternalbits.disk.IconPixels;
 import io.github.eternalbits.disk.WrongHeaderException;
+import io.github.eternalbits.icons.Pool;
 import io.github.eternalbits.icons.Static;
 import io.github.eternalbits.png.PngFiles;
 import io.github.eternalbits.png.PngHeader;
@@ -45,6 +57,7 @@ class IcnsHeader {
 	private final AppHeader app;	// Parent object to associated APPLE and ARGB
 	
 	List<DiskIconsView> disk = new ArrayList<DiskIconsView>();
+	IconOutput output = null;		// The file to be written, if there is anything to write
 
 	int		signature;				// Magic literal, must be "icns" (0x69, 0x63, 0x6e, 0x73)
 	int		fileLength;				// Length of file, in bytes, msb first
@@ -162,7 +175,27 @@ class IcnsHeader {
 			new OSMatch("SB24", "48 PNG", 1, null),
 		};
 	
+	/**
+	 * Returns the output icon type, the OSType and the OSType of the mask for an
+	 *  entry of layout {@code match}, preferably of OSType {@code type}. An Auto
+	 *  layout is PNG or 32-bit, unless {@code type} is only found in one of them.
+	 *  When both are possible it returns ICON_AUTO with the OSType and mask of
+	 *  32-bit, followed by the OSType of PNG.
+	 * 
+	 * @param match	The size and icon, like "128 PNG".
+	 * @param type	The OSType that is preferred.
+	 * @return	The result, or null if there is none.
+	 */
 	public static String[] OSMatch(String match, String type) {
+		if (Static.getIcon(match).equals("Auto")) {
+			String[] fs_png = OSMatch(Static.getSize(match)+" PNG", type);
+			String[] fs_bit = OSMatch(Static.getSize(match)+" 32-bit", type);
+			if (fs_png == null || fs_bit != null && fs_bit[1].equals(type) && !fs_png[1].equals(type))
+				return fs_bit;
+			if (fs_bit == null || fs_png[1].equals(type) && !fs_bit[1].equals(type))
+				return fs_png;
+			return new String[] {Integer.toString(DiskIcons.ICON_AUTO), fs_bit[1], fs_bit[2], fs_png[1]};
+		}
 		String[] ms_type = null;
 		for (OSMatch array : osMatch) {
 			if (array.match.equals(match)) {
@@ -177,6 +210,12 @@ class IcnsHeader {
 	
 	public static ArrayList<String> OSMatch(String match) {
 		ArrayList<String> type = new ArrayList<String>();
+		if (Static.getIcon(match).equals("Auto")) {
+			type.addAll(OSMatch(Static.getSize(match)+" PNG"));
+			for (String bit: OSMatch(Static.getSize(match)+" 32-bit"))
+				if (!type.contains(bit)) type.add(bit);
+			return type;
+		}
 		for (OSMatch array : osMatch) {
 			if (array.match.equals(match)) {
 				type.add(array.type);
@@ -200,6 +239,8 @@ class IcnsHeader {
 		 * Start by searching the available icons for the corresponding fs.type and fs.mask
 		 */
 		List<DiskIconsView> local = new ArrayList<DiskIconsView>();
+		Map<DiskIconsView, String[]> auto = new IdentityHashMap<DiskIconsView, String[]>();
+		Map<DiskIconsView, DiskIconsView> masks = new IdentityHashMap<DiskIconsView, DiskIconsView>();
 		for (DiskIconsView fs: image.getFiles()) {
 			if (fs.isIcon > 0 && fs.forIcon != -1) {	// PNG, BITMAP, APPLE, ARGB
 				if (fs.size == 0)
@@ -210,6 +251,8 @@ class IcnsHeader {
 					fs.forIcon = Integer.parseInt(fs_type[0]);			// PNG, APPLE, ARGB
 					fs.type = fs_type[1];
 					local.add(fs);
+					if (fs.forIcon == DiskIcons.ICON_AUTO)				// PNG or 32-bit, decided below
+						auto.put(fs, fs_type);
 					if (fs_type[2] != null) {							// If fs.mask is not null
 						DiskIconsView fm = new DiskIconsView();			// creates a new DiskIconsView
 						fm.forIcon = DiskIcons.ICON_MASK;				// MASK
@@ -219,18 +262,75 @@ class IcnsHeader {
 						fm.offset = fs.offset;
 						fm.length = fs.length;
 						fm.layout = fs.layout;
-						fm.image = fs.image;
+						fm.shareImage(fs);
 						local.add(fm);
+						masks.put(fs, fm);
 					}
 				}
 			}
 		}
 		
-		if (local.isEmpty()) return;
+		/**
+		 * Read the images first. An entry that was not modified keeps its bytes,
+		 *  and is not decoded. An entry that cannot be decoded is left out, with
+		 *  its mask.
+		 */
+		Map<DiskIconsView, IconPixels> pixels = new IdentityHashMap<DiskIconsView, IconPixels>();
+		Map<DiskIconsView, IconBytes> bytes = new IdentityHashMap<DiskIconsView, IconBytes>();
+		for (Iterator<DiskIconsView> it = local.iterator(); it.hasNext(); ) {
+			DiskIconsView fs = it.next();
+			IconBytes fs_bytes = fs.getBytes(fs.forIcon, fs.size);
+			if (fs_bytes != null) {
+				bytes.put(fs, fs_bytes);
+				continue;
+			}
+			IconPixels fs_pixels = fs.getImage();
+			if (fs_pixels != null)
+				pixels.put(fs, fs_pixels);
+			else it.remove();
+		}
+		
+		/**
+		 * An entry in Auto is encoded as PNG in another thread while it is encoded
+		 *  as 32-bit in this one, and it keeps the smaller. The payload is kept for
+		 *  the write, and the mask of 32-bit is left out if PNG is chosen.
+		 */
+		Map<DiskIconsView, byte[]> payload = new IdentityHashMap<DiskIconsView, byte[]>();
+		for (DiskIconsView fs: new ArrayList<DiskIconsView>(local)) {
+			if (!auto.containsKey(fs) || !pixels.containsKey(fs))
+				continue;
+			int power = fs.size;
+			final IconPixels fs_image = Static.copyPng(pixels.get(fs), power, fs.layout);
+			Future<byte[]> fs_png = ForkJoinPool.commonPool().submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return app.writePng(fs_image).toByteArray();
+				}
+			});
+			DiskIconsView fm = masks.get(fs);									// With a mask the 32-bit is APPLE, otherwise ARGB
+			byte[] fs_bit = fm != null? app.writeApple(fs_image, power): app.writeArgb(fs_image, power);
+			byte[] fm_bit = fm != null? app.writeMask(fs_image, power): new byte[0];
+			byte[] png = join(fs_png);
+			
+			if (png.length + 8 <= fs_bit.length + 8 + (fm != null? fm_bit.length + 8: 0)) {
+				fs.forIcon = DiskIcons.ICON_PNG;
+				fs.type = auto.get(fs)[3];
+				payload.put(fs, png);
+				if (fm != null) {
+					local.remove(fm);
+					pixels.remove(fm);
+				}
+			}
+			else {
+				fs.forIcon = fm != null? DiskIcons.ICON_APPLE: DiskIcons.ICON_ARGB;
+				payload.put(fs, fs_bit);
+				if (fm != null)
+					payload.put(fm, fm_bit);
+			}
+		}
 		
-		RandomAccessFile to = icns.getMedia();
-		icns.done = true;
-		to.setLength(0);
+		if (local.isEmpty()) return;
+		output = new IconOutput();
 		
 		/**
 		 * If you have more than one icon you create the Table of contents
@@ -245,69 +345,128 @@ class IcnsHeader {
 		}
 		
 		/**
-		 * Writes the header and possibly the Table of contents empty
+		 * The header and possibly the Table of contents come first, they are
+		 *  filled once the icons are in place
 		 */
-		byte[] header = new byte[HEADER_SIZE];
-		to.write(header);
+		byte[] header = new byte[HEADER_SIZE + (local.size() > 1? 8 * local.size(): 0)];
+		output.add(header);
 		
-		byte[] toc = new byte[8 * local.size()];
-		if (local.size() > 1) {
-			to.write(toc);
+		/**
+		 * Entries of the same image, size and encoding, like ic08 and ic13, have the
+		 *  same payload. It is encoded for the first of them and kept for the others,
+		 *  and an image is resized once for each size it is written in.
+		 */
+		Map<DiskIconsView, DiskIconsView> twins = new IdentityHashMap<DiskIconsView, DiskIconsView>();
+		for (int i = 0; i < local.size(); i++) {
+			DiskIconsView fs = local.get(i);
+			if (!pixels.containsKey(fs))
+				continue;
+			for (int j = 0; j < i; j++) {
+				DiskIconsView ft = local.get(j);
+				if (pixels.get(ft) == pixels.get(fs) && ft.size == fs.size && ft.forIcon == fs.forIcon) {
+					twins.put(fs, ft);
+					break;
+				}
+			}
 		}
+		Map<Integer, IconPixels> resizedFrom = new HashMap<Integer, IconPixels>();	// The image now in the pixels of Pool of each size
+		Map<Integer, IconPixels> resized = new HashMap<Integer, IconPixels>();
 		
 		/**
-		 * Then write the icons
+		 * Then the icons
 		 */
 		for (DiskIconsView fs: local) {
+			byte[] buffer = null;
+			IconBytes fs_bytes = null;
+			if (bytes.containsKey(fs)) {												// Passing bytes as they were read, copied from the file when written
+				fs_bytes = bytes.get(fs);
+			}
+			else
+			if (twins.containsKey(fs)) {												// Passing bytes already encoded for a twin
+				buffer = payload.get(twins.get(fs));
+			}
+			else
+			if (payload.containsKey(fs)) {												// Passing bytes already encoded in Auto
+				buffer = payload.get(fs);
+			}
+			else
 			if (fs.isIcon > 0) {	// PNG, APPLE, MASK, ARGB
-				BufferedImage fs_image = Static.copyPng(fs.image, fs.size, fs.layout);
-				byte[] buffer = null;
-				
 				int power = fs.size;
+				IconPixels fs_source = pixels.get(fs);
+				IconPixels fs_image = resized.get(power);
+				if (resizedFrom.get(power) != fs_source) {
+					fs_image = Static.copyPng(fs_source, power, fs.layout);
+					resizedFrom.put(power, fs_source);
+					resized.put(power, fs_image);
+				}
+				
 				if (fs.forIcon == DiskIcons.ICON_APPLE) {
 					buffer = app.writeApple(fs_image, power);
-					fs.length = buffer.length + 8;
 				}
 				else
 				if (fs.forIcon == DiskIcons.ICON_MASK) {
 					buffer = app.writeMask(fs_image, power);
-					fs.length = buffer.length + 8;
 				}
 				else
 				if (fs.forIcon == DiskIcons.ICON_ARGB) {
 					buffer = app.writeArgb(fs_image, power);
-					fs.length = buffer.length + 8;
 				}
 				else {
-					buffer = app.writePng(fs_image);
-					fs.length = buffer.length + 8;
+					buffer = app.writePng(fs_image).toByteArray();
 				}
 				
-				ByteBuffer tw = ByteBuffer.wrap(header).order(IcnsFiles.BYTE_ORDER);
+				if (twins.containsValue(fs))
+					payload.put(fs, buffer);
+			}
+			
+			if (buffer != null || fs_bytes != null) {
+				fs.length = (fs_bytes != null? fs_bytes.getLength(): buffer.length) + 8;
+				byte[] entry = new byte[8];
+				ByteBuffer tw = ByteBuffer.wrap(entry).order(IcnsFiles.BYTE_ORDER);
 				tw.put(fs.type.getBytes(StandardCharsets.US_ASCII));
 				tw.putInt(fs.length);
-				to.write(header);
-				to.write(buffer);
-				
+				output.add(entry);
+				if (fs_bytes != null)
+					output.add(fs_bytes);
+				else
+					output.add(buffer);
 			}
 		}
 		
 		/**
-		 * Finally write the full header and Table of contents
+		 * Finally the full header and Table of contents
 		 */
-		to.seek(0);
 		ByteBuffer tw = ByteBuffer.wrap(header).order(IcnsFiles.BYTE_ORDER);
 		tw.putInt(IcnsFiles.ICON_ICNS);
-		tw.putInt((int) to.length());
-		to.write(header);
+		tw.putInt((int) output.getLength());
 		
 		if (local.size() > 1) {
-			tw = ByteBuffer.wrap(toc).order(IcnsFiles.BYTE_ORDER);
 			for (DiskIconsView fs: local) {
 				tw.put(fs.type.getBytes(StandardCharsets.US_ASCII));
 				tw.putInt(fs.length);
 			}
-			to.write(toc);
+		}
+	}
+	
+	/**
+	 * Waits for the bytes encoded in another thread, and throws what it threw.
+	 * 
+	 * @param future	The bytes being encoded.
+	 * @return	The bytes.
+	 */
+	private static byte[] join(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
 		}
 	}
 	
@@ -336,8 +495,9 @@ class IcnsHeader {
 						throw new WrongHeaderException(getClass(), icns.getPath());
 					tr.get(type);
 					length = tr.getInt(4);
-					if (length < 8 || offset + length > icns.getLength())
+					if (length < 8 || (long) offset + length > icns.getLength())
 						throw new WrongHeaderException(getClass(), icns.getPath());
+					IconLimits.checkEntry(icns.getPath(), length);
 					
 					DiskIconsView view = new DiskIconsView();
 					view.isIcon = DiskIcons.NOT_AN_ICON;
@@ -350,8 +510,9 @@ class IcnsHeader {
 					if (tr.limit() >= 16 && tr.getInt(8) == PngFiles.ICON_PGN && tr.getInt(12) == PngFiles.DOS_UNIX) { // %PNG....
 						view.isIcon = DiskIcons.ICON_PNG;
 						view.description = img.ImageHeader(icns, offset + 16, length - 8);
-						view.image = img.createPng(icns, view.offset, view.length);
+						view.setSource(img.sourcePng(icns, view.offset, view.length), img.getWidth(), img.getHeight());
 						view.layout = view.description;
+						view.setBytes(img.bytesPng(icns, view.offset, view.length, view.layout));
 					} 
 					else 
 					if (tr.limit() >= 16 && tr.getInt(8) == 12 && tr.getInt(12) == IcnsFiles.ICON_JPEG) { // jP: JPEG 2000
@@ -370,10 +531,13 @@ class IcnsHeader {
 						view.description = Static.getInteger(view.description) + " 32-bit ARGB";
 						view.layout = view.description.replaceFirst(" ARGB", "");
 						int power = Static.getInteger(view.layout);
-						view.image = app.createArgb(icns.getMedia(), view.offset, view.length, power);
-						if (view.image != null)
+						if (app.fitsArgb(view.length, power)) {
+							view.setSource(app.sourceArgb(icns, view.offset, view.length, power), power, power);
 							view.isIcon = DiskIcons.ICON_ARGB;
+							view.setBytes(icns.bytes(view.offset, view.length, DiskIcons.ICON_ARGB, power));
+						}
 					} 
+					Pool.giveBack(tr.array());
 					offset += length;
 					disk.add(view);
 				}
@@ -389,9 +553,10 @@ class IcnsHeader {
 							for (DiskIconsView fm: disk) {								// searches for the respective bitmap
 								if (fm.type.equals(fs_type[2])) {
 									int power = Static.getInteger(fs.layout);
-									fs.image = app.createApple(icns.getMedia(), fs.offset, fs.length, fm.offset, fm.length, power);
-									if (fs.image != null)
+									if (app.fitsApple(fs.length, fm.length, power)) {
+										fs.setSource(app.sourceApple(icns, fs.offset, fs.length, fm.offset, fm.length, power), power, power);
 										fs.isIcon = DiskIcons.ICON_APPLE;
+									}
 									break;
 								}
 							}
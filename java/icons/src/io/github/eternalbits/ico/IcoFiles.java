@@ -20,10 +20,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconLimits;
 import io.github.eternalbits.disk.WrongHeaderException;
 
 /**
@@ -45,21 +48,37 @@ public class IcoFiles extends DiskIcons {
 	 * @param image	Abstract class that represents a disk icon.
 	 */
 	public IcoFiles(File file, DiskIcons image, String icon) throws IOException, WrongHeaderException {
-		media = new RandomAccessFile(file, "rw");
-		try { // Always close media on Exception
-			path = file.getPath();
-			done = false;
-			setType();
-			
-			header = new IcoHeader(this, image, icon);
-			length = file.length();
+		this(file.getPath(), image, icon);
+		if (header.output != null) {
+			header.output.writeTo(file);
+			done = true;
 		}
-		catch (Exception e) {
-			media.close();
-			throw e;
+		length = file.length();
+	}
+	
+	/**
+	 * ICO writing routine to a channel, like memory, a pipe or a socket.
+	 * 
+	 * @param to	Write access to the channel, it is not closed.
+	 * @param image	Abstract class that represents a disk icon.
+	 */
+	public IcoFiles(WritableByteChannel to, DiskIcons image, String icon) throws IOException, WrongHeaderException {
+		this(to.toString(), image, icon);
+		if (header.output != null) {
+			header.output.writeTo(to);
+			done = true;
+			length = header.output.getLength();
 		}
 	}
 	
+	private IcoFiles(String path, DiskIcons image, String icon) throws IOException, WrongHeaderException {
+		this.path = path;
+		done = false;
+		setType();
+		
+		header = new IcoHeader(this, image, icon);
+	}
+	
 	/**
 	 * ICO file reading routine.
 	 * 
@@ -67,16 +86,55 @@ public class IcoFiles extends DiskIcons {
 	 * @param mode	String meaning file access.
 	 */
 	public IcoFiles(File file, String mode) throws IOException, WrongHeaderException {
+		this(file, mode, false);
+	}
+	
+	/**
+	 * ICO file reading routine, with the decoded pixels optionally off-heap.
+	 * 
+	 * @param file	Read access to ICO file.
+	 * @param mode	String meaning file access.
+	 * @param offHeap	Keep the decoded pixels outside the Java heap until closed.
+	 */
+	public IcoFiles(File file, String mode, boolean offHeap) throws IOException, WrongHeaderException {
 		media = new RandomAccessFile(file, mode);
 		try { // Always close media on Exception
 			path = file.getPath();
 			length = file.length();
+			modified = file.lastModified();
+			IconLimits.checkFile(path, length);
+			setType();
+			setOffHeap(offHeap);
+			
+			header = new IcoHeader(this, readIcon(0, IcoHeader.HEADER_SIZE));
+		}
+		catch (Exception e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * ICO reading routine from a channel, like memory. The channel is read
+	 *  with positioned reads and it is not closed, not even by {@link #close()}.
+	 * 
+	 * @param in	Read access to the channel.
+	 * @param name	A name for the messages, like the name of the file.
+	 * @param offHeap	Keep the decoded pixels outside the Java heap until closed.
+	 */
+	public IcoFiles(SeekableByteChannel in, String name, boolean offHeap) throws IOException, WrongHeaderException {
+		setInput(in);
+		try { // Always close on Exception
+			path = name;
+			length = in.size();
+			IconLimits.checkFile(path, length);
 			setType();
+			setOffHeap(offHeap);
 			
 			header = new IcoHeader(this, readIcon(0, IcoHeader.HEADER_SIZE));
 		}
 		catch (Exception e) {
-			media.close();
+			close();
 			throw e;
 		}
 	}
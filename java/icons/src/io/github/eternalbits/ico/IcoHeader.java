@@ -16,18 +16,27 @@
 
 package io.github.eternalbits.ico;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 import io.github.eternalbits.bitmap.MapHeader;
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconBytes;
+import io.github.eternalbits.disk.IconLimits;
+import io.github.eternalbits.disk.IconOutput;
+import io.github.eternalbits.disk.IconPixels;
 import io.github.eternalbits.disk.WrongHeaderException;
+import io.github.eternalbits.icons.Pool;
 import io.github.eternalbits.icons.Static;
 import io.github.eternalbits.png.PngFiles;
 import io.github.eternalbits.png.PngHeader;
@@ -43,6 +52,7 @@ class IcoHeader {
 	private final MapHeader map;	// Parent object to associated BITMAP
 	
 	List<DiskIconsView> disk = new ArrayList<DiskIconsView>();
+	IconOutput output = null;		// The file to be written, if there is anything to write
 	
 	short	alwaysBe0;				// Reserved, must always be 0
 	short	signature;				// Specifies image type 1 for icon, lsb first
@@ -89,51 +99,111 @@ class IcoHeader {
 			if (fs.isIcon > 0 && fs.forIcon != -1) {	// PNG, BITMAP, APPLE, ARGB
 				if (fs.size == 0)
 					fs.size = Static.getInteger(fs.layout);
-				fs.forIcon = fs.layout.endsWith("PNG")? DiskIcons.ICON_PNG: DiskIcons.ICON_BITMAP;
+				fs.forIcon = fs.layout.endsWith("PNG")? DiskIcons.ICON_PNG: fs.layout.endsWith("Auto")? DiskIcons.ICON_AUTO: DiskIcons.ICON_BITMAP;
 				local.add(fs);
 			}
 		}
 		
-		if (local.isEmpty()) return;
+		/**
+		 * Read the images first. An entry that was not modified keeps its bytes,
+		 *  and is not decoded. An entry that cannot be decoded is left out.
+		 */
+		Map<DiskIconsView, IconPixels> pixels = new IdentityHashMap<DiskIconsView, IconPixels>();
+		Map<DiskIconsView, IconBytes> bytes = new IdentityHashMap<DiskIconsView, IconBytes>();
+		for (Iterator<DiskIconsView> it = local.iterator(); it.hasNext(); ) {
+			DiskIconsView fs = it.next();
+			IconBytes fs_bytes = fs.getBytes(fs.forIcon, fs.size);
+			if (fs_bytes != null) {
+				bytes.put(fs, fs_bytes);
+				continue;
+			}
+			IconPixels fs_pixels = fs.getImage();
+			if (fs_pixels != null)
+				pixels.put(fs, fs_pixels);
+			else it.remove();
+		}
 		
-		RandomAccessFile to = ico.getMedia();
-		ico.done = true;
-		to.setLength(0);
+		if (local.isEmpty()) return;
+		output = new IconOutput();
 		
 		/**
-		 * Writes the header and the structure of image directory empty
+		 * The header and the structure of image directory come first, the
+		 *  structure is filled once the icons are in place
 		 */
-		byte[] header = new byte[HEADER_SIZE];
-		ByteBuffer tw = ByteBuffer.wrap(header).order(IcoFiles.BYTE_ORDER);
+		byte[] structure = new byte[HEADER_SIZE + 16 * local.size()];
+		ByteBuffer tw = ByteBuffer.wrap(structure).order(IcoFiles.BYTE_ORDER);
 		tw.putShort((short) 0);
 		tw.putShort((short) 1);
 		tw.putShort((short) local.size());
-		to.write(header);
-		
-		byte[] structure = new byte[16 * local.size()];
-		to.write(structure);
+		output.add(structure);
 		
 		/**
-		 * Then write the icons
+		 * Then the icons. Identical payloads, like the same image in two entries,
+		 *  are written once and their directory entries share the offset. Bytes
+		 *  reused as they were read are the same when they are the same IconBytes.
 		 */
+		Map<DiskIconsView, Integer> offsets = new IdentityHashMap<DiskIconsView, Integer>();
+		Map<IconBytes, Integer> reused = new IdentityHashMap<IconBytes, Integer>();
+		Map<DiskIconsView, byte[]> blocks = new IdentityHashMap<DiskIconsView, byte[]>();
+		Map<Long, List<DiskIconsView>> written = new HashMap<Long, List<DiskIconsView>>();
+		CRC32 crc = new CRC32();
 		for (DiskIconsView fs: local) {
-			BufferedImage fs_image = Static.copyPng(fs.image, fs.size, fs.layout);
+			if (bytes.containsKey(fs)) {												// Passing bytes as they were read, copied from the file when written
+				IconBytes fs_bytes = bytes.get(fs);
+				fs.length = fs_bytes.getLength();
+				if (!reused.containsKey(fs_bytes)) {
+					reused.put(fs_bytes, (int) output.getLength());
+					output.add(fs_bytes);
+				}
+				offsets.put(fs, reused.get(fs_bytes));
+				continue;
+			}
+			IconPixels fs_image = Static.copyPng(pixels.get(fs), fs.size, fs.layout);
 			int power = fs.size;
 			
+			Pool.Output out;
+			if (fs.forIcon == DiskIcons.ICON_AUTO) {
+				out = map.writePng(fs_image);											// Passing bytes from a saved image to the smaller of PNG and bitmap
+				if (out.size() > Static.bitmapRound(power))
+					out = map.writeBitmap(fs_image, power);
+			}
+			else
 			if (fs.forIcon == DiskIcons.ICON_BITMAP) {
-				fs.length = map.writeBitmap(fs_image, to, power);						// Passing bytes from a saved image to a bitmap
+				out = map.writeBitmap(fs_image, power);									// Passing bytes from a saved image to a bitmap
 			}
 			else {
-				fs.length = map.writePng(fs_image, to);									// Passing bytes from a saved image to PNG
+				out = map.writePng(fs_image);											// Passing bytes from a saved image to PNG
+			}
+			byte[] block = out.toByteArray();
+			fs.length = block.length;
+			
+			crc.reset();
+			crc.update(block);
+			List<DiskIconsView> same = written.get(crc.getValue());
+			if (same == null) {
+				same = new ArrayList<DiskIconsView>();
+				written.put(crc.getValue(), same);
+			}
+			DiskIconsView twin = null;
+			for (DiskIconsView ws: same) {
+				if (Arrays.equals(blocks.get(ws), block)) {
+					twin = ws;
+					break;
+				}
+			}
+			if (twin != null) {
+				offsets.put(fs, offsets.get(twin));
+				continue;
 			}
+			offsets.put(fs, (int) output.getLength());
+			output.add(block);
+			blocks.put(fs, block);
+			same.add(fs);
 		}
 		
 		/**
-		 * Finally write the full structure of image directory
+		 * Finally the full structure of image directory
 		 */
-		to.seek(HEADER_SIZE);
-		int offset = HEADER_SIZE + 16 * local.size();
-		tw = ByteBuffer.wrap(structure).order(IcoFiles.BYTE_ORDER);
 		for (DiskIconsView fs: local) {
 			int power = fs.size;
 			tw.put((byte) power);
@@ -143,10 +213,8 @@ class IcoHeader {
 			tw.putShort((short) 1);
 			tw.putShort((short) 32);
 			tw.putInt(fs.length);
-			tw.putInt(offset);
-			offset += fs.length;
+			tw.putInt(offsets.get(fs));
 		}
-		to.write(structure);
 		
 	}
 	
@@ -183,8 +251,10 @@ class IcoHeader {
 					bits	= tr.getShort();
 					size	= tr.getInt();
 					position= tr.getInt();
-					if (position < 0 || size < 0 || (position + size) > ico.getLength())
+					Pool.giveBack(tr.array());
+					if (position < HEADER_SIZE + 16 * number || size < 0 || (long) position + size > ico.getLength())
 						throw new WrongHeaderException(getClass(), ico.getPath());
+					IconLimits.checkEntry(ico.getPath(), size);
 					
 					DiskIconsView view = new DiskIconsView();
 					view.isIcon = DiskIcons.NOT_AN_ICON;
@@ -197,8 +267,9 @@ class IcoHeader {
 					if (tr.limit() >= 8 && tr.getInt(0) == PngFiles.ICON_PGN && tr.getInt(4) == PngFiles.DOS_UNIX) { // %PNG....
 						view.isIcon = DiskIcons.ICON_PNG;
 						view.description = img.ImageHeader(ico, position + 8, size);
-						view.image = img.createPng(ico, view.offset, view.length);
+						view.setSource(img.sourcePng(ico, view.offset, view.length), img.getWidth(), img.getHeight());
 						view.layout = view.description;
+						view.setBytes(img.bytesPng(ico, view.offset, view.length, view.layout));
 					} else {
 						tr.order(ByteOrder.LITTLE_ENDIAN);
 						if (tr.limit() >= 8 && tr.getInt(0) == 40) { // BITMAP
@@ -207,13 +278,15 @@ class IcoHeader {
 							view.layout = view.description.replaceFirst(" RGBA?", "");
 							
 							int power = Static.getInteger(view.layout);
-							if (view.length == Static.bitmapRound(power)) {
-								view.image = map.createBitmap(ico.getMedia(), view.offset, view.length, power);
-								if (view.image != null)
-									view.isIcon = DiskIcons.ICON_BITMAP;
+							IconLimits.checkPixels(ico.getPath(), power, power);
+							if (power > 0 && view.length == Static.bitmapRound(power)) {
+								view.setSource(map.sourceBitmap(ico, view.offset, view.length, power), power, power);
+								view.isIcon = DiskIcons.ICON_BITMAP;
+								view.setBytes(ico.bytes(view.offset, view.length, DiskIcons.ICON_BITMAP, power));
 							}
 						}
 					}
+					Pool.giveBack(tr.array());
 					disk.add(view);
 				}
 				
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.icons;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import io.github.eternalbits.disk.DiskIcons;
+import io.github.eternalbits.disk.DiskImage;
+
+/**
+ * Converts many icons in one run, each on a thread of a fixed pool, so that a
+ *  whole release is converted by one JVM instead of one JVM per icon. Every
+ *  conversion is independent: a file that fails is reported and the others go
+ *  on. A line is printed as each file ends, and the totals at the end.
+ * <p>
+ * The jobs come from {@code --batch}, all alike, or from a {@code --jobs} file,
+ *  each with its own destination, format and icon phrase. Only a few jobs per
+ *  thread wait in the queue at any time, and a source used by several jobs is
+ *  read once and shared by them, each writing from its own {@link DiskIcons#copy()}.
+ * <p>
+ */
+class Batch {
+	private final static String JOB_DONE = "OK %s -> %s (%d bytes, %d ms)";
+	private final static String JOB_FAILED = "FAILED %s: %s";
+	private final static String JOB_EMPTY = "No icon was created";
+	private final static String BATCH_DONE = "%d of %d icons converted, %d failed, in %.2f s (%.1f icons/s, %.2f MB/s read)";
+	private final static String NO_MATCH = "No icon matches \"%s\"";
+	private final static String BAD_JOB = "%s (Line %d is not a valid job)";
+	private final static String SAME_DESTINATION = "%s is also the destination of %s";
+	private final static int QUEUE = 2;			// Jobs waiting for each thread
+	private final static List<String> EXTENSIONS = Arrays.asList("icns", "ico", "png");
+
+	private final int threads;				// Conversions at the same time
+	private final boolean offHeap;			// Decoded pixels are kept outside the Java heap
+	private final boolean overwrite;		// Existing outputs are replaced
+	private final PrintStream log;			// One line for each file and the totals
+
+	private int done = 0;					// Files converted
+	private int failed = 0;					// Files not converted
+	private long read = 0;					// Bytes of the files converted
+
+	Batch(int threads, boolean offHeap, boolean overwrite, PrintStream log) {
+		this.threads = threads;
+		this.offHeap = offHeap;
+		this.overwrite = overwrite;
+		this.log = log;
+	}
+
+	/**
+	 * One conversion: the source, the destination, its format and icon phrase.
+	 */
+	static class Job {
+		final File from;
+		final File to;
+		final String type;
+		final String icon;
+
+		Job(File from, File to, String type, String icon) {
+			this.from = from;
+			this.to = to;
+			this.type = type;
+			this.icon = icon;
+		}
+	}
+
+	/**
+	 * The jobs of {@code --batch}: every icon of {@code source} is written to
+	 *  {@code folder} with the same name and the extension of {@code type}.
+	 *  Files found by a glob keep their path relative to the start of the glob.
+	 *
+	 * @param source	A directory, or a glob like {@code icons/*.ico} or {@code icons/**.icns}.
+	 * @param folder	The output directory.
+	 * @param type	Extension type: ico, icns or png.
+	 * @param icon	A list with the icon and output, or {@code null}.
+	 * @return	The jobs, sorted by source.
+	 */
+	static List<Job> jobs(String source, File folder, String type, String icon) throws IOException {
+		Path base = Paths.get(source);
+		PathMatcher glob = null;
+		if (!Files.isDirectory(base)) {
+			Path start = base.isAbsolute()? base.getRoot(): Paths.get("");
+			Path pattern = Paths.get("");
+			boolean wild = false;
+			for (Path name: base) {
+				wild |= name.toString().matches(".*[*?\\[{].*");
+				if (wild) pattern = pattern.resolve(name);
+				else start = start.resolve(name);
+			}
+			base = start.toString().isEmpty()? Paths.get("."): start;
+			glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern.toString().replace(File.separatorChar, '/'));
+		}
+		List<Job> jobs = new ArrayList<Job>();
+		try (Stream<Path> files = glob == null? Files.list(base): Files.walk(base)) {
+			for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+				Path path = it.next();
+				if (!Files.isRegularFile(path))
+					continue;
+				Path relative = base.relativize(path);
+				if (glob == null? !EXTENSIONS.contains(Static.getExtension(path.toFile()).toLowerCase()): !glob.matches(relative))
+					continue;
+				String name = relative.toString().replaceFirst("[.][^.\\" + File.separator + "]*$", "");
+				jobs.add(new Job(path.toFile(), new File(folder, name + "." + type), type, icon));
+			}
+		}
+		if (jobs.isEmpty())
+			throw new IOException(String.format(NO_MATCH, source));
+		Collections.sort(jobs, new Comparator<Job>() {
+			@Override
+			public int compare(Job a, Job b) {
+				return a.from.compareTo(b.from);
+			}
+		});
+		return jobs;
+	}
+
+	/**
+	 * The jobs of {@code --jobs}, one on each line of {@code manifest}, either
+	 *  separated by tabs:
+	 * <pre>source	destination	format	icon</pre>
+	 *  or as a JSON object:
+	 * <pre>{"source": "a.ico", "destination": "a.icns", "format": "icns", "icon": "3=*"}</pre>
+	 *  The format and the icon phrase can be left out, the format is then the
+	 *  extension of the destination. Empty lines and lines starting with # are
+	 *  ignored. Nothing is converted if any line is wrong.
+	 *
+	 * @param manifest	The file with the jobs.
+	 * @param dir	Relative paths start here, null for the current directory.
+	 * @return	The jobs, in the order of the file.
+	 */
+	static List<Job> jobs(File manifest, File dir) throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		try (BufferedReader in = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+			int number = 0;
+			for (String line; (line = in.readLine()) != null; ) {
+				number++;
+				if (line.trim().isEmpty() || line.startsWith("#"))
+					continue;
+				String[] job = new String[4];
+				if (line.trim().startsWith("{")) {
+					Map<String, String> members = members(line);
+					if (members == null)
+						throw new IOException(String.format(BAD_JOB, manifest, number));
+					job[0] = members.get("source");
+					job[1] = members.get("destination");
+					job[2] = members.get("format");
+					job[3] = members.get("icon");
+				}
+				else {
+					String[] fields = line.split("\t", -1);
+					if (fields.length > job.length)
+						throw new IOException(String.format(BAD_JOB, manifest, number));
+					System.arraycopy(fields, 0, job, 0, fields.length);
+				}
+				if (job[0] == null || job[0].isEmpty() || job[1] == null || job[1].isEmpty())
+					throw new IOException(String.format(BAD_JOB, manifest, number));
+				File from = new File(job[0]);
+				if (dir != null && !from.isAbsolute())
+					from = new File(dir, job[0]);
+				File to = new File(job[1]);
+				if (dir != null && !to.isAbsolute())
+					to = new File(dir, job[1]);
+				String type = (job[2] == null || job[2].isEmpty()? Static.getExtension(to): job[2]).toLowerCase();
+				if (!EXTENSIONS.contains(type))
+					throw new IOException(String.format(BAD_JOB, manifest, number));
+				jobs.add(new Job(from, to, type, job[3] == null || job[3].isEmpty()? null: job[3]));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Reads a JSON object of strings, or nulls, that is all of {@code line}.
+	 *
+	 * @return	The members, or {@code null} if the line is not such an object.
+	 */
+	private static Map<String, String> members(String line) {
+		Map<String, String> members = new HashMap<String, String>();
+		StringBuilder sb = new StringBuilder();
+		int i = skip(line, 0) + 1;
+		if (line.charAt(i - 1) != '{')
+			return null;
+		i = skip(line, i);
+		if (line.startsWith("}", i))
+			return skip(line, i + 1) == line.length()? members: null;
+		while (true) {
+			i = string(line, i, sb);
+			if (i < 0) return null;
+			String name = sb.toString();
+			i = skip(line, i);
+			if (!line.startsWith(":", i))
+				return null;
+			i = skip(line, i + 1);
+			if (line.startsWith("null", i)) {
+				members.put(name, null);
+				i += 4;
+			}
+			else {
+				i = string(line, i, sb);
+				if (i < 0) return null;
+				members.put(name, sb.toString());
+			}
+			i = skip(line, i);
+			if (i >= line.length())
+				return null;
+			char c = line.charAt(i);
+			i = skip(line, i + 1);
+			if (c == '}')
+				return i == line.length()? members: null;
+			if (c != ',')
+				return null;
+		}
+	}
+
+	private static int skip(String line, int i) {
+		while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+			i++;
+		return i;
+	}
+
+	/**
+	 * Reads the JSON string starting at {@code i} into {@code sb}.
+	 *
+	 * @return	The index after the string, or -1 if there is no valid string.
+	 */
+	private static int string(String line, int i, StringBuilder sb) {
+		sb.setLength(0);
+		if (!line.startsWith("\"", i))
+			return -1;
+		for (i++; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"')
+				return i + 1;
+			if (c == '\\') {
+				if (++i >= line.length())
+					return -1;
+				switch (c = line.charAt(i)) {
+				case 'b': c = '\b'; break;
+				case 'f': c = '\f'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case '"': case '\\': case '/': break;
+				case 'u':
+					if (i + 4 >= line.length())
+						return -1;
+					try {
+						c = (char) Integer.parseInt(line.substring(i + 1, i + 5), 16);
+					} catch (NumberFormatException e) {
+						return -1;
+					}
+					i += 4;
+					break;
+				default:
+					return -1;
+				}
+			}
+			sb.append(c);
+		}
+		return -1;
+	}
+
+	/**
+	 * A file read by one or more jobs. It is opened by the first job that runs
+	 *  and closed by the last one that ends.
+	 */
+	private class Source {
+		final File file;
+		int users = 0;						// Jobs that did not end yet
+		DiskIcons image = null;
+
+		Source(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * The icon to be written by a job, a copy while other jobs may use it.
+		 */
+		synchronized DiskIcons acquire() throws IOException {
+			if (image == null)
+				image = DiskImage.open(file, "r", offHeap);
+			return users > 1? image.copy(): image;
+		}
+
+		synchronized void release() throws IOException {
+			if (--users == 0 && image != null) {
+				image.close();
+				image = null;
+			}
+		}
+	}
+
+	/**
+	 * Runs all the {@code jobs} and prints the totals. Jobs with the same
+	 *  destination, like {@code a.ico} and {@code a.png} converted to one
+	 *  folder, would write the same file at the same time, so all of them
+	 *  fail without running.
+	 *
+	 * @param jobs	The conversions.
+	 * @return	{@code true} if every conversion succeeded.
+	 */
+	boolean run(List<Job> jobs) throws InterruptedException {
+		long start = System.nanoTime();
+		Map<Job, Job> clash = clashes(jobs);
+		Map<File, Source> sources = new HashMap<File, Source>();
+		for (Job job: jobs) {
+			if (clash.containsKey(job))
+				continue;
+			File file = job.from.getAbsoluteFile();
+			Source source = sources.get(file);
+			if (source == null) {
+				source = new Source(file);
+				sources.put(file, source);
+			}
+			source.users++;
+		}
+		
+		final Semaphore queue = new Semaphore(threads * (QUEUE + 1));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final Job job: jobs) {
+				if (clash.containsKey(job)) {
+					synchronized (this) {
+						failed++;
+						log.println(String.format(JOB_FAILED, job.from, String.format(SAME_DESTINATION, job.to, clash.get(job).from)));
+					}
+					continue;
+				}
+				final Source source = sources.get(job.from.getAbsoluteFile());
+				queue.acquire();
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						try {
+							convert(job, source);
+						}
+						finally {
+							queue.release();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future: futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		log.println(String.format(BATCH_DONE, done, jobs.size(), failed, seconds, 
+				done / seconds, read / seconds / (1 << 20)));
+		return failed == 0;
+	}
+
+	/**
+	 * The jobs whose destination is also that of another job, each with one
+	 *  of those other jobs. Destinations are compared as canonical files, so
+	 *  that two paths of the same file are the same.
+	 */
+	private static Map<Job, Job> clashes(List<Job> jobs) {
+		Map<File, Job> first = new HashMap<File, Job>();
+		Map<Job, Job> clash = new IdentityHashMap<Job, Job>();
+		for (Job job: jobs) {
+			File file;
+			try {
+				file = job.to.getCanonicalFile();
+			} catch (IOException e) {
+				file = job.to.getAbsoluteFile();
+			}
+			Job other = first.get(file);
+			if (other == null) {
+				first.put(file, job);
+				continue;
+			}
+			clash.put(job, other);
+			if (!clash.containsKey(other))
+				clash.put(other, job);
+		}
+		return clash;
+	}
+
+	/**
+	 * Converts one file, and reports it. Nothing it throws reaches the others.
+	 */
+	private void convert(Job job, Source source) {
+		long start = System.nanoTime();
+		try {
+			try {
+				if (!overwrite && job.to.exists())
+					throw new IOException(String.format(Icons.FILE_ALREADY_EXISTS, job.to));
+				File parent = job.to.getAbsoluteFile().getParentFile();
+				if (!parent.isDirectory() && !parent.mkdirs())
+					throw new IOException(parent.getPath());
+				DiskIcons image = source.acquire();
+				long length;
+				try (DiskIcons clone = DiskImage.create(job.type, job.to, image, job.icon)) {
+					if (!clone.done)
+						throw new IOException(JOB_EMPTY);
+					length = clone.getLength();
+				}
+				synchronized (this) {
+					done++;
+					read += image.getLength();
+					log.println(String.format(JOB_DONE, job.from, job.to, length, (System.nanoTime() - start) / 1000000));
+				}
+			}
+			finally {
+				source.release();
+			}
+		}
+		catch (Exception e) {
+			synchronized (this) {
+				failed++;
+				log.println(String.format(JOB_FAILED, job.from, Static.simpleString(e)));
+			}
+		}
+	}
+
+}
@@ -19,8 +19,13 @@ package io.github.eternalbits.icons;
 import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -49,7 +54,40 @@ import io.github.eternalbits.icons.gui.FrontEnd;
 public class Icons {
 
 	private final static String IMAGE_CREATED = "The '%s' was created in the '%s' directory.";
+	private final static String IMAGE_WRITTEN = "The icon was written to the standard output.";
 	private final static String IMAGE_NOT_CREATED = "The operation ended abnormally. No icon was created.";
+	private final static String STANDARD_STREAM = "-";				// The file name of stdin or stdout
+	private final static String STANDARD_INPUT = "standard input";
+	
+	private final File dir;				// Relative paths start here, null for the current directory
+	private final InputStream in;		// Standard input
+	private final PrintStream out;		// Standard output
+	private final PrintStream err;		// Standard error
+	private final boolean served;		// Run by a --serve for a --remote client
+	private boolean offHeap = false;	// Decoded pixels are kept outside the Java heap
+	private PrintStream log;			// Messages, stderr when stdout is the icon
+	
+	private Icons() {
+		this(null, System.in, System.out, System.err, false);
+	}
+	
+	/**
+	 * A command line with its own working directory and standard streams.
+	 * 
+	 * @param dir	Relative paths start here, null for the current directory.
+	 * @param in	Standard input.
+	 * @param out	Standard output.
+	 * @param err	Standard error.
+	 * @param served	Run by a --serve for a --remote client.
+	 */
+	Icons(File dir, InputStream in, PrintStream out, PrintStream err, boolean served) {
+		this.dir = dir;
+		this.in = in;
+		this.out = out;
+		this.err = err;
+		this.served = served;
+		log = out;
+	}
 	
 	/**
 	 * Outputs --dump to a file as described in {@link DiskImageShow}.
@@ -57,8 +95,57 @@ public class Icons {
 	 * @param file	File we want to get a --dump of.
 	 */
 	private void showView(File file) throws IOException {
-		try (DiskIcons image = DiskImage.open(file, "r")) {
-			dump(image.getShow());
+		try (DiskIcons image = open(file)) {
+			dump(image.getShow(), out);
+		}
+	}
+	
+	/**
+	 * Opens a file, or the standard input if its name is {@code -}. The standard
+	 *  input is read into memory, and nothing is written to the disk.
+	 * 
+	 * @param file	File to be read.
+	 */
+	private DiskIcons open(File file) throws IOException {
+		if (isStandard(file))
+			return DiskImage.open(in, STANDARD_INPUT, offHeap);
+		return DiskImage.open(file, "r", offHeap);
+	}
+	
+	private static boolean isStandard(File file) {
+		return file.getPath().equals(STANDARD_STREAM);
+	}
+	
+	/**
+	 * The file of {@code path}, relative to the working directory of the command.
+	 * 
+	 * @param path	A path as given in the command line.
+	 */
+	private File resolve(String path) {
+		File file = new File(path);
+		return dir == null || file.isAbsolute() || isStandard(file)? file: new File(dir, path);
+	}
+	
+	/**
+	 * Copies a file (ICO, ICNS or PNG) to the standard output. The icon is
+	 *  built in memory and only written when it is complete.
+	 * 
+	 * @param from	File to be copied.
+	 * @param type	Extension type: ico, icns or png.
+	 * @param icon	A list with the icon and output.
+	 * @return	true if the icon was written, so that an empty output is not taken for an icon.
+	 */
+	private boolean copy(File from, String type, String icon) throws IOException, WrongHeaderException {
+		try (DiskIcons image = open(from)) {
+			try (DiskIcons clone = DiskImage.create(type, Channels.newChannel(out), image, icon)) {
+				out.flush();
+				boolean done = clone.done && !out.checkError();				// A PrintStream keeps its IOException to itself
+				log.println(done? IMAGE_WRITTEN: IMAGE_NOT_CREATED);
+				return done;
+			} catch (IOException e) {
+				log.println(IMAGE_NOT_CREATED);
+				return false;
+			}
 		}
 	}
 	
@@ -69,16 +156,17 @@ public class Icons {
 	 * @param to	File we want to overlay.
 	 * @param type	Extension type: ico, icns or png.
 	 * @param icon	A list with the icon and output.
+	 * @return	true if the icon was created, like the exit code of a batch.
 	 */
-	private void copy(File from, File to, String type, String icon) throws IOException, WrongHeaderException {
+	private boolean copy(File from, File to, String type, String icon) throws IOException, WrongHeaderException {
 	//	File copy logic to better handle file deletion and reporting when icon creation fails
 		boolean save = from.getPath().equals(to.getPath());
 		Boolean done = null;
-		try (DiskIcons image = DiskImage.open(from, "r")) {
+		try (DiskIcons image = open(from)) {
 			try (DiskIcons clone = DiskImage.create(type, to, image, icon)) {
 				done = clone.done;	// done open by DiskImage
 			} catch (IOException e) {
-				System.out.println(IMAGE_NOT_CREATED);
+				log.println(IMAGE_NOT_CREATED);
 			}
 		}
 		finally {
@@ -86,17 +174,22 @@ public class Icons {
 				if (to.isFile() && done == false) 
 					if (!save && to.length() == 0) 
 						to.delete();
-				System.out.println(to != null && to.isFile() && done? String.format(IMAGE_CREATED, 
+				log.println(to != null && to.isFile() && done? String.format(IMAGE_CREATED, 
 						to.getName(), to.getAbsoluteFile().getParent()): IMAGE_NOT_CREATED);
 			}
 		}
+		return done != null && done && to.isFile();
 	}
 
 	private final static String[] DEFAULT_FILE_FILTER = {null, "icns", "ico", "png"};
 	private final static String FILES_ARE_DUPLICATED = "File \"%s\" is the same as the old image!";
-	private final static String FILE_ALREADY_EXISTS = "File \"%s\" already exists";
+	final static String FILE_ALREADY_EXISTS = "File \"%s\" already exists";
 	private final static String INCORRECT_COMMAND = "The syntax of the command is incorrect.";
 	private final static String TOO_MANY_OPTIONS = "There are too many options: %s.";
+	private final static String FORMAT_REQUIRED = "The --format option is required to write to -.";
+	private final static String NOT_A_DIRECTORY = "File \"%s\" is not a directory";
+	private final static String INVALID_THREADS = "The number of threads is invalid: %s.";
+	private final static String INVALID_PORT = "The port is invalid: %s.";
 	
 	private final static String version = "1.7";
 	private final static String year = "-2026";
@@ -126,7 +219,9 @@ public class Icons {
 			return;
 		}
 		
-		new Icons().commandLine(args);
+		int code = new Icons().commandLine(args);
+		if (code != 0)
+			System.exit(code);
 		
 	}
 
@@ -167,14 +262,20 @@ public class Icons {
 	private static Options buildOptions() {
 		Options options = new Options();
 		OptionGroup source = new OptionGroup();
-		source.addOption(Option.builder("c").longOpt("copy").desc("copy <src> to a new image").hasArgs().argName("src").build());
-		source.addOption(Option.builder("d").longOpt("dump").desc("print <src> disk image details").hasArgs().argName("src").build());
+		source.addOption(Option.builder("c").longOpt("copy").desc("copy <src> to a new image, - for stdin").hasArgs().argName("src").build());
+		source.addOption(Option.builder("d").longOpt("dump").desc("print <src> disk image details, - for stdin").hasArgs().argName("src").build());
+		source.addOption(Option.builder("b").longOpt("batch").desc("copy every icon of <src>, a directory or glob").hasArgs().argName("src").build());
+		source.addOption(Option.builder().longOpt("serve").desc("run the commands of remote clients on <port>").hasArgs().argName("port").build());
+		source.addOption(Option.builder("j").longOpt("jobs").desc("run the copies listed in <file>, TSV or JSON lines").hasArgs().argName("file").build());
 		source.setRequired(true);
 		options.addOptionGroup(source);
-		options.addOption(Option.builder("w").longOpt("write").desc("set <out> as destination file for copy").hasArgs().argName("out").build());
+		options.addOption(Option.builder("w").longOpt("write").desc("set <out> as destination file for copy, - for stdout").hasArgs().argName("out").build());
 		options.addOption(Option.builder("f").longOpt("format").desc("copy output format: ICNS, ICO or PNG").hasArgs().argName("fmt").build());
 		options.addOption(Option.builder("i").longOpt("icon").desc("a list with the icon and output").hasArgs().argName("ico").build());
 		options.addOption(Option.builder("o").longOpt("overwrite").desc("overwrite existing file on copy").build());
+		options.addOption(Option.builder("t").longOpt("threads").desc("copies at the same time on batch or jobs").hasArgs().argName("n").build());
+		options.addOption(Option.builder().longOpt("off-heap").desc("keep decoded pixels outside the Java heap").build());
+		options.addOption(Option.builder().longOpt("remote").desc("run the command on the server of <port>").hasArgs().argName("port").build());
 		return options;
 	}
 	
@@ -188,15 +289,53 @@ public class Icons {
 	private File getOptionValues(CommandLine cmd, String opt) throws ParseException {
 		if (cmd.getOptionValues(opt).length != 1)
 			throw new ParseException(String.format(TOO_MANY_OPTIONS, opt));
-		return new File(cmd.getOptionValue(opt));
+		return resolve(cmd.getOptionValue(opt));
+	}
+	
+	/**
+	 * The --threads of --batch and --jobs, by default one for each processor.
+	 * 
+	 * @param cmd	Command line.
+	 * @return	The number of threads.
+	 */
+	private int getThreads(CommandLine cmd) throws ParseException {
+		if (!cmd.hasOption("t"))
+			return Runtime.getRuntime().availableProcessors();
+		String t = cmd.getOptionValue("t");
+		int threads = 0;
+		try {
+			threads = Integer.parseInt(t);
+		} catch (NumberFormatException e) {}
+		if (cmd.getOptionValues("t").length != 1 || threads < 1)
+			throw new ParseException(String.format(INVALID_THREADS, t));
+		return threads;
+	}
+	
+	/**
+	 * The --serve or --remote port, a number from 0 to 65535.
+	 * 
+	 * @param cmd	Command line.
+	 * @param opt	Like "serve" or "remote".
+	 * @return	The port.
+	 */
+	private static int getPort(CommandLine cmd, String opt) throws ParseException {
+		String p = cmd.getOptionValue(opt);
+		int port = -1;
+		try {
+			port = Integer.parseInt(p);
+		} catch (NumberFormatException e) {}
+		if (cmd.getOptionValues(opt).length != 1 || port < 0 || port > 0xFFFF)
+			throw new ParseException(String.format(INVALID_PORT, p));
+		return port;
 	}
 	
 	/**
 	 * The program was called with parameters.
 	 * 
 	 * @param args	Parameters as described in --help.
+	 * @return	The exit code, 0 if everything went well.
 	 */
-	private void commandLine(String[] args) {
+	int commandLine(String[] args) {
 		
 		Options options = buildOptions();
 		Options helpers = buildHelpers();
@@ -206,15 +345,35 @@ public class Icons {
 		try {
 			CommandLine cmd = new DefaultParser().parse(helpers, args, true);
 			if (cmd.hasOption("version")) {
-				printAbout();
-				return;
+				printAbout(out);
+				return 0;
 			}
 			if (cmd.hasOption("help")) {
-				printHelp(options);
-				return;
+				printHelp(options, log);
+				return 0;
 			}
 			
 			cmd = new DefaultParser().parse(options, args);
+			offHeap = cmd.hasOption("off-heap");
+			
+			if (cmd.hasOption("remote")) {
+				if (served)
+					throw new ParseException(INCORRECT_COMMAND);
+				int port = getPort(cmd, "remote");
+				List<String> rest = new ArrayList<String>();
+				for (int i = 0; i < args.length; i++) {
+					if (args[i].equals("--remote")) i++;
+					else if (!args[i].startsWith("--remote=")) rest.add(args[i]);
+				}
+				return Server.forward(port, rest.toArray(new String[rest.size()]));
+			}
+			
+			if (cmd.hasOption("serve")) {
+				if (served || cmd.hasOption("w") || cmd.hasOption("o") || cmd.hasOption("f") || cmd.hasOption("i"))
+					throw new ParseException(INCORRECT_COMMAND);
+				Server.serve(getPort(cmd, "serve"), getThreads(cmd), log);
+				return 0;
+			}
 			
 			if (cmd.hasOption("c")) {
 				
@@ -223,11 +382,16 @@ public class Icons {
 				
 				File from = getOptionValues(cmd, "c");
 				File to = getOptionValues(cmd, "w");
+				if (isStandard(to)) {
+					log = err;
+					if (!cmd.hasOption("f"))
+						throw new ParseException(FORMAT_REQUIRED);
+				}
 				
-				if (!cmd.hasOption("o") && to.exists())
+				if (!cmd.hasOption("o") && !isStandard(to) && to.exists())
 					throw new ParseException(String.format(FILE_ALREADY_EXISTS, to));
 				
-				if (!cmd.hasOption("i") && from.equals(to))
+				if (!cmd.hasOption("i") && !isStandard(to) && from.equals(to))
 					throw new ParseException(String.format(FILES_ARE_DUPLICATED, to));
 				
 				String f = cmd.hasOption("f")? cmd.getOptionValue("f").toLowerCase(): null;
@@ -241,44 +405,93 @@ public class Icons {
 				if (cmd.hasOption("i") && cmd.getOptionValues("i").length != 1)
 					throw new ParseException(String.format(TOO_MANY_OPTIONS, "i"));
 								
-				copy(from, to, f, cmd.getOptionValue("i"));
-				return;
+				if (isStandard(to))
+					return copy(from, f, cmd.getOptionValue("i"))? 0: 1;
+				return copy(from, to, f, cmd.getOptionValue("i"))? 0: 1;
+			}
+			
+			if (cmd.hasOption("b")) {
+				
+				if (!cmd.hasOption("w") || !cmd.hasOption("f"))
+					throw new ParseException(INCORRECT_COMMAND);
+				
+				if (cmd.getOptionValues("b").length != 1)
+					throw new ParseException(String.format(TOO_MANY_OPTIONS, "b"));
+				File to = getOptionValues(cmd, "w");
+				if (to.exists() && !to.isDirectory())
+					throw new ParseException(String.format(NOT_A_DIRECTORY, to));
+				
+				if (cmd.getOptionValues("f").length != 1)
+					throw new ParseException(String.format(TOO_MANY_OPTIONS, "f"));
+				String f = cmd.getOptionValue("f").toLowerCase();
+				if (!Arrays.asList(DEFAULT_FILE_FILTER).contains(f))
+					throw new ParseException(INCORRECT_COMMAND);
+				
+				if (cmd.hasOption("i") && cmd.getOptionValues("i").length != 1)
+					throw new ParseException(String.format(TOO_MANY_OPTIONS, "i"));
+				
+				Batch batch = new Batch(getThreads(cmd), offHeap, cmd.hasOption("o"), log);
+				return batch.run(Batch.jobs(resolve(cmd.getOptionValue("b")).getPath(), to, f, cmd.getOptionValue("i")))? 0: 1;
+			}
+			
+			if (cmd.hasOption("j")) {
+				
+				if (cmd.hasOption("w") || cmd.hasOption("f") || cmd.hasOption("i"))
+					throw new ParseException(INCORRECT_COMMAND);
+				
+				Batch batch = new Batch(getThreads(cmd), offHeap, cmd.hasOption("o"), log);
+				return batch.run(Batch.jobs(getOptionValues(cmd, "j"), dir))? 0: 1;
 			}
 			
-			if (cmd.hasOption("w") || cmd.hasOption("o") || cmd.hasOption("f") || cmd.hasOption("i"))
+			if (cmd.hasOption("w") || cmd.hasOption("o") || cmd.hasOption("f") || cmd.hasOption("i") || cmd.hasOption("t"))
 				throw new ParseException(INCORRECT_COMMAND);
 			
 			if (cmd.hasOption("d")) {
 				showView(getOptionValues(cmd, "d"));
-				return;
+				return 0;
 			}
 			
-		} catch (ParseException | IOException | WrongHeaderException e) {
-			printHelp(options);
-			System.out.println("\n"+Static.simpleString(e));
-			System.exit(1);
+		} catch (ParseException | IOException | WrongHeaderException | InterruptedException e) {
+			printHelp(options, log);
+			log.println("\n"+Static.simpleString(e));
+			return 1;
 		}
+		return 0;
 
 	}
 
 	/**
 	 * Called with "--version" or "--help" parameters.
 	 */
-	private static void printAbout() {
-		System.out.println("Icons version "+version+" copyright 2024"+year+" Rui Baptista");
-		System.out.println("Licensed under the Apache License, Version 2.0.");
+	private static void printAbout(PrintStream out) {
+		out.println("Icons version "+version+" copyright 2024"+year+" Rui Baptista");
+		out.println("Licensed under the Apache License, Version 2.0.");
 	}
 	
-	private static void printHelp(Options options) {
+	private static void printHelp(Options options, PrintStream out) {
 		HelpFormatter formatter = new HelpFormatter();
 		formatter.setSyntaxPrefix("Usage: ");
 		final String prefix = "--";
 		String header = "\nTo convert ICO to ICNS disk icons. Version "+version+"\n\n";
-		String footer = ("\nOne of ^copy or ^dump is required\n^icon can be a phrase like\n"
-				+ "2=bit;3=*;4=64:bit;?=48:bit;?=24:bit for ICO or\n"
-				+ "1=ic05:png;2=ic04:bit;3=*;?=128:png for ICNS\n").replace("^", prefix);
+		String footer = ("\nOne of ^copy, ^dump, ^batch, ^jobs or ^serve is required\n^icon can be a phrase like\n"
+				+ "2=bit;3=*;4=64:bit;?=48:bit;?=24:auto for ICO or\n"
+				+ "1=ic05:png;2=ic04:bit;3=*;?=128:auto for ICNS\n"
+				+ "where auto keeps the smaller of png and bit\n"
+				+ "Use - as <src> or <out> for stdin or stdout,\n"
+				+ "^format is then required for <out>\n"
+				+ "^batch takes a directory or a glob like 'icons/*.ico',\n"
+				+ "^write is then a directory and ^format is required\n"
+				+ "^jobs has one copy on each line, either\n"
+				+ "src<TAB>out<TAB>fmt<TAB>ico or a JSON object with\n"
+				+ "source, destination, format and icon\n"
+				+ "^serve listens on 127.0.0.1 only, and ^remote sends\n"
+				+ "the rest of the command to it, with a secret\n"
+				+ "that only the same user can read\n").replace("^", prefix);
 		formatter.setLongOptPrefix(" "+prefix);
-		formatter.printHelp("java -jar "+jar, header, options, footer, true);
+		PrintWriter writer = new PrintWriter(out);
+		formatter.printHelp(writer, formatter.getWidth(), "java -jar "+jar, header, options, 
+				formatter.getLeftPadding(), formatter.getDescPadding(), footer, true);
+		writer.flush();
 	}
 	
 	/**
@@ -286,20 +499,21 @@ public class Icons {
 	 * 
 	 * @param obj	Output object.
 	 */
-	public static void dump(Object obj) { dump(obj, ""); }
-	private static void dump(Object obj, String in) {
+	public static void dump(Object obj) { dump(obj, System.out); }
+	public static void dump(Object obj, PrintStream out) { dump(obj, "", out); }
+	private static void dump(Object obj, String in, PrintStream out) {
 		for (Field fld: obj.getClass().getDeclaredFields()) {
 			try {
 				if (!fld.getName().startsWith("this$")) {
 					if (!Modifier.isPrivate(fld.getModifiers())) {
 						if (fld.getAnnotation(Deprecated.class) == null) {
 							if (!fld.getType().isAssignableFrom(List.class)) {
-								System.out.println(in+fld.getName()+": "+fld.get(obj));
+								out.println(in+fld.getName()+": "+fld.get(obj));
 							} else {
 								int i = 0;
 								for (Object item: (List<?>)fld.get(obj)) {
-									System.out.println(in+fld.getName()+"["+i+"]");
-									dump(item, in+"    ");
+									out.println(in+fld.getName()+"["+i+"]");
+									dump(item, in+"    ", out);
 									i++;
 								}
 							}
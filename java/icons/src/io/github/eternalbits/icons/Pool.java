@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.icons;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import io.github.eternalbits.disk.IconPixels;
+
+/**
+ * Per-thread pool of the codec objects used by PNG, ICO and ICNS. Looking up an
+ *  ImageIO service provider and allocating native zlib state costs more than
+ *  decoding a small icon, so each thread keeps one reader per format, one
+ *  Inflater and one Deflater, and reuses them for every entry. The large scratch
+ *  buffers of an entry, its resized pixels and its encoded bytes, are kept the
+ *  same way so that converting big icons does not allocate them again.
+ * <p>
+ * Every other temporary array of a codec is borrowed from a small arena of
+ *  this thread with {@link #borrow(int)} and given back with {@link #giveBack},
+ *  so that a steady conversion loop only allocates its outputs.
+ * <p>
+ */
+public class Pool {
+
+	static { // Never write ImageIO temporary files, icons always fit in memory
+		ImageIO.setUseCache(false);
+	}
+
+	static final int SCRATCH_DEPTH = 4;				// Arrays kept for each length
+	static final long SCRATCH_LIMIT = 32L << 20;	// Bytes kept by each thread, 32 MB
+
+	private static final ThreadLocal<Pool> local = ThreadLocal.withInitial(Pool::new);
+
+	private final Map<String, ImageReader> readers = new HashMap<>();
+	private final Map<Integer, IconPixels> pixels = new HashMap<>();
+	private final Output output = new Output();
+	private Inflater inflater = null;
+	private Deflater deflater = null;
+	private final Map<Integer, ArrayDeque<byte[]>> scratch = new HashMap<>();
+	private long scratched = 0;						// Bytes in scratch
+
+	private Pool() {}
+
+	/**
+	 * Reads an image with the pooled reader of {@code format}, the same as
+	 *  {@link ImageIO#read(ImageInputStream)} but without searching the registry.
+	 *
+	 * @param format	Informal format name, like "png" or "bmp".
+	 * @param in	The image input stream, it is not closed.
+	 * @return	The image, or {@code null} if there is no reader for this format.
+	 */
+	public static BufferedImage read(String format, ImageInputStream in) throws IOException {
+		Pool pool = local.get();
+		ImageReader reader = pool.readers.get(format);
+		if (reader == null) {
+			Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName(format);
+			if (!it.hasNext())
+				return null;
+			reader = it.next();
+			pool.readers.put(format, reader);
+		}
+		try {
+			reader.setInput(in, true, true);
+			return reader.read(0, reader.getDefaultReadParam());
+		} catch (IOException | RuntimeException e) {
+			pool.readers.remove(format);		// Never reuse a reader in an unknown state
+			throw e;
+		} finally {
+			reader.setInput(null);
+		}
+	}
+
+	/**
+	 * Returns the Inflater of this thread, already reset. It must not be ended
+	 *  by the caller, and it must not be shared with another thread.
+	 *
+	 * @return	A ready to use Inflater.
+	 */
+	public static Inflater inflater() {
+		Pool pool = local.get();
+		if (pool.inflater == null)
+			pool.inflater = new Inflater();
+		pool.inflater.reset();
+		return pool.inflater;
+	}
+	
+	/**
+	 * Returns the Deflater of this thread, already reset and with the given
+	 *  level. The same rules of {@link #inflater()} apply.
+	 *
+	 * @param level	The compression level, from 0 to 9.
+	 * @return	A ready to use Deflater.
+	 */
+	public static Deflater deflater(int level) {
+		Pool pool = local.get();
+		if (pool.deflater == null)
+			pool.deflater = new Deflater();
+		pool.deflater.reset();
+		pool.deflater.setLevel(level);
+		return pool.deflater;
+	}
+	
+	/**
+	 * Returns cleared pixels of {@code power} by {@code power} owned by this
+	 *  thread. They are meant for the resized copy that only lives until the entry
+	 *  is encoded, and they are handed out again by the next call with the same
+	 *  size. Keeping them avoids new multi-megabyte pixels per 512 or 1024 entry.
+	 *
+	 * @param power	The length of one side.
+	 * @return	Transparent pixels that must not be kept by the caller.
+	 */
+	public static IconPixels pixels(int power) {
+		Pool pool = local.get();
+		IconPixels pixels = pool.pixels.get(power);
+		if (pixels == null) {
+			pixels = new IconPixels(power, power);
+			pool.pixels.put(power, pixels);
+		} else {
+			pixels.clear();
+		}
+		return pixels;
+	}
+	
+	/**
+	 * Borrows a byte array of exactly {@code length} bytes from the arena of this
+	 *  thread, or allocates a new one if there is none. The content is whatever
+	 *  was left by the previous borrower, so the caller must clear it if needed.
+	 *
+	 * @param length	The length of the array.
+	 * @return	An array to be given back with {@link #giveBack}.
+	 */
+	public static byte[] borrow(int length) {
+		Pool pool = local.get();
+		ArrayDeque<byte[]> free = pool.scratch.get(length);
+		byte[] buffer = free == null? null: free.pollFirst();
+		if (buffer == null)
+			return new byte[length];
+		pool.scratched -= length;
+		return buffer;
+	}
+	
+	/**
+	 * Gives back an array taken with {@link #borrow(int)}, that must no longer be
+	 *  used by the caller. Arrays above the limits of the arena are left to the
+	 *  garbage collector.
+	 *
+	 * @param buffer	The array, or {@code null}.
+	 */
+	public static void giveBack(byte[] buffer) {
+		Pool pool = local.get();
+		if (buffer == null || pool.scratched + buffer.length > SCRATCH_LIMIT)
+			return;
+		ArrayDeque<byte[]> free = pool.scratch.computeIfAbsent(buffer.length, k -> new ArrayDeque<>());
+		if (free.size() >= SCRATCH_DEPTH)
+			return;
+		for (byte[] b: free)
+			if (b == buffer) return;					// Given back twice
+		free.addFirst(buffer);
+		pool.scratched += buffer.length;
+	}
+	
+	/**
+	 * Rounds {@code length} up to a power of two, for scratch arrays whose length
+	 *  changes on every call, like the chunks of a PNG.
+	 *
+	 * @param length	The length needed.
+	 * @return	The length to borrow.
+	 */
+	public static int sizeClass(int length) {
+		return length <= 16? 16: Integer.highestOneBit(length - 1) << 1;
+	}
+	
+	/**
+	 * Returns the output buffer of this thread, already reset. Its array grows to
+	 *  the largest entry encoded so far and is then reused, instead of growing and
+	 *  copying a new ByteArrayOutputStream for every entry.
+	 *
+	 * @return	An empty Output, valid until the next call on this thread.
+	 */
+	public static Output output() {
+		Output output = local.get().output;
+		output.reset();
+		return output;
+	}
+	
+	/**
+	 * A ByteArrayOutputStream that gives access to its array, so the bytes can be
+	 *  written out without {@link #toByteArray()}.
+	 */
+	public static class Output extends ByteArrayOutputStream {
+		
+		private Output() {
+			super(8192);
+		}
+		
+		public byte[] buffer() {
+			return buf;
+		}
+		
+		public void writeTo(RandomAccessFile to) throws IOException {
+			to.write(buf, 0, count);
+		}
+		
+	}
+
+}
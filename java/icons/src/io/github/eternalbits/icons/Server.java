@@ -0,0 +1,302 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.icons;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.github.eternalbits.disk.IconLimits;
+
+/**
+ * Runs the command line for other processes, so that the JVM is started and
+ *  warmed up once instead of once for every icon. {@code --serve} listens on a
+ *  port of the loopback address only, and runs each command on a thread of a
+ *  fixed pool, as if it had been given in the working directory of the client.
+ *  {@code --remote} is the client: it sends the rest of its command line, its
+ *  working directory and, when the source is -, its standard input, then prints
+ *  what the server prints and exits with its code.
+ * <p>
+ * Other users of the same machine can reach the port too, so a request must
+ *  carry the secret of a file in the working directory that only its owner can
+ *  read. The server creates it the first time, and a client of the same user
+ *  reads it. Once a thread takes a connection, the whole request must be read
+ *  within {@code TIMEOUT}, and connections beyond those that the pool can queue
+ *  are closed at once.
+ * <p>
+ * A request is {@code MAGIC}, the secret, the directory, the number of arguments
+ *  and each of them, then the length of the standard input and its bytes, or -1
+ *  if there is none. The answer is a list of frames, each the stream, 1 for
+ *  stdout or 2 for stderr, the length and the bytes, ended by a stream 0 and
+ *  the code.
+ * <p>
+ */
+class Server {
+	private final static String LISTENING = "Listening on %s:%d with %d threads.";
+	private final static String REQUEST_FAILED = "Request from %s failed: %s";
+	private final static String SERVER_BUSY = "Request from %s refused, %d waiting";
+	private final static String WRONG_SECRET = "Wrong secret";
+	private final static String REQUEST_TIMEOUT = "The request was not read in time";
+	private final static String NO_SECRET = "No secret, run --serve first";
+	private final static String NOT_PRIVATE = "%s must be readable by its owner only";
+	private final static String NOT_SECRET = "%s does not hold a secret of %d bytes";
+	private final static String SECRET_FILE = "iconstuff.key";
+	static final int MAGIC = 0x49636f6e;			// "Icon"
+	static final int MAX_ARGS = 1024;				// Arguments of one command
+	static final int SECRET = 32;					// Bytes of the secret
+	static final int TIMEOUT = 30000;				// Milliseconds to read a whole request, once a thread takes it
+	static final int QUEUE = 4;						// Connections waiting for each thread
+
+	private Server() {}
+
+	/**
+	 * Answers the requests of {@code port} until the process is stopped.
+	 *
+	 * @param port	The TCP port, or 0 for any free port.
+	 * @param threads	Commands run at the same time.
+	 * @param log	Where the port and the failed requests are printed.
+	 */
+	static void serve(int port, int threads, final PrintStream log) throws IOException {
+		final byte[] secret = secret(true);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(threads * QUEUE));
+		final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			log.println(String.format(LISTENING, server.getInetAddress().getHostAddress(), server.getLocalPort(), threads));
+			while (true) {
+				final Socket socket = server.accept();
+				socket.setSoTimeout(TIMEOUT);
+				try {
+					pool.execute(new Runnable() {
+						@Override
+						public void run() {
+							try (Socket client = socket) {
+								answer(client, secret, deadlines);
+							} catch (IOException | RuntimeException e) {
+								log.println(String.format(REQUEST_FAILED, socket.getRemoteSocketAddress(), Static.simpleString(e)));
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					log.println(String.format(SERVER_BUSY, socket.getRemoteSocketAddress(), pool.getQueue().size()));
+					socket.close();
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			deadlines.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads one request, runs it and sends the answer. Nothing is run unless
+	 *  the request carries {@code secret}. The socket is closed by
+	 *  {@code deadlines} if the whole request is not read within {@code TIMEOUT},
+	 *  however slowly its bytes keep coming.
+	 */
+	private static void answer(final Socket socket, byte[] secret, ScheduledExecutorService deadlines) throws IOException {
+		ScheduledFuture<?> deadline = deadlines.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					socket.close();
+				} catch (IOException e) {}
+			}
+		}, TIMEOUT, TimeUnit.MILLISECONDS);
+		DataInputStream from = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream to = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (from.readInt() != MAGIC)
+			throw new IOException(Integer.toHexString(MAGIC));
+		byte[] key = new byte[SECRET];
+		from.readFully(key);
+		if (!MessageDigest.isEqual(key, secret))
+			throw new IOException(WRONG_SECRET);
+		File dir = new File(from.readUTF());
+		int count = from.readInt();
+		if (count < 0 || count > MAX_ARGS)
+			throw new IOException(Integer.toString(count));
+		String[] args = new String[count];
+		for (int i = 0; i < count; i++)
+			args[i] = from.readUTF();
+		int length = from.readInt();
+		IconLimits.checkFile(socket.getRemoteSocketAddress().toString(), length);
+		byte[] stdin = new byte[Math.max(length, 0)];
+		from.readFully(stdin);
+		if (!deadline.cancel(false))
+			throw new IOException(REQUEST_TIMEOUT);
+		
+		PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(to, 1), 1 << 16));
+		PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(to, 2), 1 << 12));
+		int code = new Icons(dir, new ByteArrayInputStream(stdin), out, err, true).commandLine(args);
+		err.flush();
+		out.flush();
+		to.writeByte(0);
+		to.writeInt(code);
+		to.flush();
+	}
+
+	/**
+	 * Sends {@code args} to the server of {@code port}, and prints its answer.
+	 *
+	 * @param port	The TCP port of the server.
+	 * @param args	The command line, without --remote.
+	 * @return	The exit code of the command.
+	 */
+	static int forward(int port, String[] args) throws IOException {
+		byte[] secret = secret(false);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream to = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream from = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			to.writeInt(MAGIC);
+			to.write(secret);
+			to.writeUTF(new File("").getAbsolutePath());
+			to.writeInt(args.length);
+			for (String arg: args)
+				to.writeUTF(arg);
+			if (readsInput(args)) {
+				byte[] stdin = System.in.readAllBytes();
+				to.writeInt(stdin.length);
+				to.write(stdin);
+			}
+			else to.writeInt(-1);
+			to.flush();
+			
+			byte[] buffer = new byte[1 << 16];
+			while (true) {
+				int stream = from.readUnsignedByte();
+				if (stream == 0)
+					break;
+				PrintStream print = stream == 1? System.out: System.err;
+				for (int length = from.readInt(); length > 0; ) {
+					int n = from.read(buffer, 0, Math.min(length, buffer.length));
+					if (n < 0)
+						throw new IOException(socket.toString());
+					print.write(buffer, 0, n);
+					length -= n;
+				}
+			}
+			System.out.flush();
+			System.err.flush();
+			return from.readInt();
+		}
+	}
+
+	/**
+	 * The secret of the server, from a file of the working directory that only
+	 *  its owner can read. A file that others can read, where the file system
+	 *  has permissions, is refused instead of being used.
+	 *
+	 * @param create	Creates the file with a new secret if there is none.
+	 * @return	The {@code SECRET} bytes.
+	 */
+	static byte[] secret(boolean create) throws IOException {
+		File dir = Static.getWorkingDirectory();
+		if (dir == null)
+			throw new IOException(NO_SECRET);
+		Path path = new File(dir, SECRET_FILE).toPath();
+		boolean posix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (create && !Files.exists(path)) {
+			byte[] secret = new byte[SECRET];
+			new SecureRandom().nextBytes(secret);
+			EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			try (SeekableByteChannel out = posix
+					? Files.newByteChannel(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+					: Files.newByteChannel(path, options)) {
+				out.write(ByteBuffer.wrap(secret));
+			} catch (FileAlreadyExistsException e) {}	// Created by another server at the same time
+		}
+		if (!Files.exists(path))
+			throw new IOException(NO_SECRET);
+		if (posix) {
+			for (PosixFilePermission permission: Files.getPosixFilePermissions(path))
+				if (!permission.name().startsWith("OWNER_"))
+					throw new IOException(String.format(NOT_PRIVATE, path));
+		}
+		byte[] secret = Files.readAllBytes(path);
+		if (secret.length != SECRET)
+			throw new IOException(String.format(NOT_SECRET, path, SECRET));
+		return secret;
+	}
+
+	/**
+	 * True if the command reads the icon from the standard input.
+	 */
+	private static boolean readsInput(String[] args) {
+		for (int i = 0; i + 1 < args.length; i++)
+			if (args[i].matches("-c|--copy|-d|--dump") && args[i + 1].equals("-"))
+				return true;
+		return false;
+	}
+
+	/**
+	 * The bytes written to one stream of the client, each write sent as a frame.
+	 */
+	private static class Frames extends OutputStream {
+		private final DataOutputStream to;
+		private final int stream;
+
+		Frames(DataOutputStream to, int stream) {
+			this.to = to;
+			this.stream = stream;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			synchronized (to) {
+				to.writeByte(stream);
+				to.writeInt(len);
+				to.write(b, off, len);
+			}
+		}
+	}
+
+}
@@ -16,12 +16,6 @@
 
 package io.github.eternalbits.icons;
 
-import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.DataBufferByte;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -30,96 +24,50 @@ import java.nio.charset.Charset;
 
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconPixels;
 
 /**
  * Utility static functions for Icons.
  */
 public class Static {
-	public static int BITMAP_HEADER = 108;
 
 	/**
-	 * A PNG image with a DataBuffer that can be represented by an array of bytes or
-	 *  integers. I honestly don't know how the difference is made, I just know that 
-	 *  the result is the same in both encodings.
+	 * The pixels as a bitmap of little endian ARGB integers, that is BGRA bytes,
+	 *  row after row from the top. The buffer is borrowed from {@link Pool} and
+	 *  should be given back with {@link Pool#giveBack} when done.
 	 * 
-	 * @param image	A PNG image with a DataBuffer.
+	 * @param image	The pixels of the icon.
 	 * @param power	The length of one side.
 	 * @return	A bitmap image within a buffer.
 	 */
-	public static byte[] toBitmap(BufferedImage image, int power) throws IOException {
-		byte[] buffer = new byte[4 * power * power];
-		DataBuffer data = image.getRaster().getDataBuffer();
-		if (data.getDataType() == DataBuffer.TYPE_BYTE) {
-			byte[] bitmap = ((DataBufferByte) data).getData();
-			for (int i = 0, j = 0; i < buffer.length; i += 4, j += 4) {
-				buffer[i+0] = bitmap[j+1];
-				buffer[i+1] = bitmap[j+2];
-				buffer[i+2] = bitmap[j+3];
-				buffer[i+3] = bitmap[j+0];
-			}
-		} else { // data.getDataType() == DataBuffer.TYPE_INT
-			int[] bitmap = ((DataBufferInt) data).getData();
-			ByteBuffer tw = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
-			for (int i = 0, j = 0; i < buffer.length; i += 4, j++)
-				tw.putInt(i, bitmap[j]);
+	public static byte[] toBitmap(IconPixels image, int power) throws IOException {
+		byte[] buffer = Pool.borrow(4 * power * power);
+		int[] row = new int[power];
+		ByteBuffer tw = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+		for (int y = 0, i = 0; y < power; y++) {
+			image.getRow(y, row);
+			for (int x = 0; x < power; x++, i += 4)
+				tw.putInt(i, row[x]);
 		}
 		return buffer;
 	}
 	
 	/**
-	 * I was hoping this would be easier, but this is how others figured out how to
-	 *  change the length.
+	 * Returns the pixels with the new length, ready to be encoded. They are resized
+	 *  by pixel replication into the scratch pixels of {@link Pool#pixels}, so the
+	 *  result is only valid until the entry is written. The color of the fully
+	 *  transparent pixels is cleared there, and {@code image} is only copied for
+	 *  that if it has such a color.
 	 * 
-	 * @param image		A PNG image with a DataBuffer.
+	 * @param image		The pixels of the icon.
 	 * @param power		The length of one side.
 	 * @param layout	A detailed description.
-	 * @return	A PNG image already with the new length.
+	 * @return	The pixels already with the new length.
 	 */
-	public static BufferedImage copyPng(BufferedImage image, int power, String layout) {
-		if (power == getInteger(layout))
+	public static IconPixels copyPng(IconPixels image, int power, String layout) {
+		if (power == getInteger(layout) && !image.hasHiddenColor())
 			return image;
-		Image img = image.getScaledInstance(power, power, Image.SCALE_DEFAULT);
-		BufferedImage bi = new BufferedImage(power, power, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g2d = bi.createGraphics();
-		g2d.drawImage(img, 0, 0, null);
-		g2d.dispose();
-		return bi;
-	}
-	
-	/**
-	 * Constructs the header from a bitmap. Note that with a 108-byte header everything
-	 *  is interpreted correctly, that is, with BI_BITFIELDS equal to 3 when transforming
-	 *  a bitmap into PNG the bit depth of the PNG is 8 and the color type is 6.
-	 * 
-	 * @param header	A buffer representing the entire bitmap.
-	 * @param length	The length of the entire bitmap.
-	 * @param power	The length of one side.
-	 */
-	public static void headerForBitmap(byte[] header, int length, int power) {
-		ByteBuffer tw = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
-		tw.putShort ((short) 0x4D42);
-		tw.putInt	(length);
-		tw.putShort	((short) 0);
-		tw.putShort	((short) 0);
-		tw.putInt	(14 + BITMAP_HEADER);
-		tw.putInt	(BITMAP_HEADER);
-		tw.putInt	(power);
-		tw.putInt	(power);
-		tw.putShort	((short) 1);
-		tw.putShort	((short) 32);
-		tw.putInt	(BITMAP_HEADER > 40? 3: 0);	// BI_BITFIELDS = 3
-		tw.putInt	(4 * power * power);
-		tw.putInt	(2835);
-		tw.putInt	(2835);
-		tw.putInt	(0);
-		tw.putInt	(0);
-		if (BITMAP_HEADER > 40) {
-			tw.putInt	(0x00ff0000);			// Red channel bit mask
-			tw.putInt	(0x0000ff00);			// Green channel bit mask
-			tw.putInt	(0x000000ff);			// Blue channel bit mask
-			tw.putInt	(0xff000000);			// Alpha channel bit mask
-			tw.putInt	(0x73524742);			// LCS_sRGB
-		}
+		return image.scale(Pool.pixels(power)).clearHiddenColor();
 	}
 	
 	/**
@@ -132,12 +80,12 @@ public class Static {
 	 * @return	True if there was an error in the input, false otherwise.
 	 */
 	public static boolean delimiterIcon(String icon, DiskIcons image) {
-		BufferedImage max = null;	// Try to save the largest number
+		DiskIconsView max = null;	// Try to save the largest number
 		int m = -1;
 		for (DiskIconsView fs: image.getFiles()) {
 			if (fs.layout != null && getInteger(fs.layout) > m) {
 				m = getInteger(fs.layout);
-				max = fs.image;
+				max = fs;
 			}
 			fs.forIcon = 0;
 		}
@@ -158,9 +106,9 @@ public class Static {
 						if (m == -1 || sub.length > 2)
 							return true;
 						fs = new DiskIconsView();
-						fs.image = max;
-						fs.layout = fs.image == null? null: fs.image.getWidth() + (fs.image.getWidth() != 
-								fs.image.getHeight()? "x" + fs.image.getHeight(): "") + " PNG";
+						fs.shareImage(max);
+						fs.layout = !fs.hasImage()? null: fs.getImageWidth() + (fs.getImageWidth() != 
+								fs.getImageHeight()? "x" + fs.getImageHeight(): "") + " PNG";
 						fs.description = fs.layout;
 						fs.isIcon = DiskIcons.ICON_PNG;
 						fs.type = "PNG";
@@ -169,12 +117,17 @@ public class Static {
 					
 					sub = sub[1].split(":");
 					for (int j = 0; j < sub.length; j++) {
+						if (fs.layout == null && sub[j].toLowerCase().matches("png|bit|auto"))
+							return true;	// only an icon has an encoding, not a mask or a table
 						if (sub[j].toLowerCase().equals("png"))
 							fs.layout = getInteger(fs.layout) + " PNG";
 						else
 						if (sub[j].toLowerCase().equals("bit"))
 							fs.layout = getInteger(fs.layout) + " 32-bit";
 						else
+						if (sub[j].toLowerCase().equals("auto"))
+							fs.layout = getInteger(fs.layout) + " Auto";
+						else
 						if (getInteger(sub[j]) != -1)
 							fs.size = getInteger(sub[j]);
 						else
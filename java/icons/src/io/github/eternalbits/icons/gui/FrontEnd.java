@@ -42,6 +42,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
 
+import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
@@ -58,6 +59,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JToolBar;
+import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
 import javax.swing.TransferHandler;
 import javax.swing.UIManager;
@@ -86,6 +88,9 @@ public class FrontEnd extends JFrame {
 	private static final String DEFAULT_FILE_FILTER = ".+\\.(?i:ico|icns|png)";
 	private static final String WINDOWS_FILE_FILTER = "*.ico;*.icns;*.png";
 	
+	static final KeyStroke UNDO_KEY = KeyStroke.getKeyStroke(KeyEvent.VK_Z, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
+	static final KeyStroke REDO_KEY = KeyStroke.getKeyStroke(KeyEvent.VK_Y, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx());
+	
 	/* The window: a tool bar with command buttons, a list with known images,
 	 *  and a main area with the selected image or a help/about dialog. 
 	 */
@@ -270,6 +275,23 @@ public class FrontEnd extends JFrame {
 			}
 		});
 		
+		getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(UNDO_KEY, "undo");
+		getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(REDO_KEY, "redo");
+		getRootPane().getActionMap().put("undo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undo(false);
+			}
+		});
+		getRootPane().getActionMap().put("redo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				undo(true);
+			}
+		});
+		
 	}
 
 	/**
@@ -415,6 +437,19 @@ public class FrontEnd extends JFrame {
 		}
 	}
 	
+	/**
+	 * Undoes or redoes the last edit of the selected file, without reading it again.
+	 * 
+	 * @param redo	True to redo, false to undo.
+	 */
+	void undo(boolean redo) {
+		int s = list.getSelectedIndex();
+		if (s != -1 && listData.get(s).undo(redo)) {
+			view.doRepaint(listData.get(s));
+			saveButton(s);
+		}
+	}
+	
 	/**
 	 * The closing result of a file
 	 */
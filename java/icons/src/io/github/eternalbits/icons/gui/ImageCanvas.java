@@ -43,6 +43,7 @@ import javax.swing.SwingUtilities;
 
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconPixels;
 import io.github.eternalbits.icons.Static;
 
 class ImageCanvas extends JPanel {
@@ -186,14 +187,14 @@ class ImageCanvas extends JPanel {
 				if (t != null && t.isDataFlavorSupported(DataFlavor.imageFlavor)) {
 					try {
 						DiskIconsView fs = new DiskIconsView();
-						fs.image = (BufferedImage) t.getTransferData(DataFlavor.imageFlavor);
-						fs.layout = fs.image == null? null: fs.image.getWidth() + (fs.image.getWidth() != 
-								fs.image.getHeight()? "x" + fs.image.getHeight(): "") + " PNG";
+						BufferedImage bi = (BufferedImage) t.getTransferData(DataFlavor.imageFlavor);
+						fs.setImage(bi == null? null: IconPixels.of(bi));
+						fs.layout = !fs.hasImage()? null: fs.getImageWidth() + (fs.getImageWidth() != 
+								fs.getImageHeight()? "x" + fs.getImageHeight(): "") + " PNG";
 						fs.description = fs.layout;
 						fs.isIcon = DiskIcons.ICON_PNG;
 						fs.type = "PNG";
 						image.putIcon(fs);
-						image.setUndo(true);
 						doRepaint(image);
 						
 					} catch (UnsupportedFlavorException | IOException p) {
@@ -210,13 +211,37 @@ class ImageCanvas extends JPanel {
 	 * @param popup	The name of the menu.
 	 */
 	void adjustComponentPopupMenu(JPopupMenu popup) {
+		final JMenuItem undo = new JMenuItem(app.res.getString("undo"));
+		final JMenuItem redo = new JMenuItem(app.res.getString("redo"));
 		final JMenuItem refresh = new JMenuItem(app.res.getString("refresh"));
 		final JMenuItem close = new JMenuItem(app.res.getString("close"));
 		
+		undo.setAccelerator(FrontEnd.UNDO_KEY);
+		redo.setAccelerator(FrontEnd.REDO_KEY);
+		undo.setEnabled(image.canUndo(false));
+		redo.setEnabled(image.canUndo(true));
+		
+		popup.add(new JSeparator());
+		popup.add(undo);
+		popup.add(redo);
 		popup.add(new JSeparator());
 		popup.add(refresh);
 		popup.add(close);
 		
+		undo.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				app.undo(false);
+			}
+		});
+		
+		redo.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				app.undo(true);
+			}
+		});
+		
 		refresh.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
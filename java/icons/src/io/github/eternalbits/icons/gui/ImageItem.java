@@ -17,12 +17,12 @@
 package io.github.eternalbits.icons.gui;
 
 import java.awt.Dimension;
-import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import javax.swing.GroupLayout;
@@ -38,6 +38,7 @@ import javax.swing.SwingUtilities;
 
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconPixels;
 import io.github.eternalbits.icns.IcnsHeader;
 import io.github.eternalbits.icons.Static;
 
@@ -46,7 +47,7 @@ class ImageItem extends JPanel {
 
 	private final String[] sz_type = {"ICO", "PNG"};
 	private final String[] sz_size = {"1024", "512", "256", "128", "64", "48", "40", "36", "32", "24", "20", "18", "16"};
-	private final String[] sz_icon = {"PNG", "32-bit"};
+	private final String[] sz_icon = {"PNG", "32-bit", "Auto"};
 	
 	private JLabel st_image;
 	private JComboBox<String> cb_type;
@@ -64,7 +65,7 @@ class ImageItem extends JPanel {
 		this.canvas = canvas;
 		this.fs = fs;
 		Dimension dim = new Dimension(fs.size > 256? 256: fs.size, fs.size > 256? 256: fs.size);
-		st_image = new JLabel(new ImageIcon(fs.image.getScaledInstance(dim.width, dim.height, Image.SCALE_DEFAULT)));			
+		st_image = new JLabel(thumbnail(fs, dim));			
 		String fs_size = String.valueOf(Static.getInteger(fs.layout));
 		String fs_icon = Static.getIcon(fs.layout);
 		cb_type = new JComboBox<String>(copyIcns(fs.size+" "+fs_icon));
@@ -83,8 +84,8 @@ class ImageItem extends JPanel {
 			public void actionPerformed(ActionEvent e) {
 				String fs_type = String.valueOf(cb_type.getSelectedItem());
 				if (!fs.type.equals(fs_type)) {
+					image.change(fs);
 					fs.type = fs_type;
-					image.setUndo(true);
 				}
 			}
         });
@@ -93,9 +94,9 @@ class ImageItem extends JPanel {
 			public void actionPerformed(ActionEvent e) {
 				String fs_size = String.valueOf(cb_size.getSelectedItem());
 				if (!Integer.toString(fs.size).equals(fs_size)) {
+					image.change(fs);
 					fs.size = Integer.parseInt(fs_size);
 					canvas.doRepaint(image);
-					image.setUndo(true);
 				}
 			}
         });
@@ -104,9 +105,9 @@ class ImageItem extends JPanel {
 			public void actionPerformed(ActionEvent e) {
 				String fs_layout = Static.getSize(fs.layout)+" "+cb_icon.getSelectedItem();
 				if (!fs.layout.equals(fs_layout)) {
+					image.change(fs);
 					fs.layout = fs_layout;
 					canvas.doRepaint(image);
-					image.setUndo(true);
 				}
 			}
         });
@@ -125,6 +126,22 @@ class ImageItem extends JPanel {
 		return cb_icon.getY() + cb_icon.getHeight() - cb_type.getY();
 	}
 	
+	/**
+	 * The image resized to {@code dim}. If the image can no longer be read,
+	 *  because the file was changed meanwhile or the entry is damaged, it is left transparent.
+	 */
+	private static ImageIcon thumbnail(DiskIconsView fs, Dimension dim) {
+		IconPixels thumb = new IconPixels(dim.width, dim.height);
+		try {
+			IconPixels pixels = fs.getImage();
+			if (pixels != null)
+				pixels.scale(thumb);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return new ImageIcon(thumb.toImage());
+	}
+	
 	private String[] copyIcns(String layout) {
 		ArrayList<String> type = IcnsHeader.OSMatch(layout);
 		type.add(0, sz_type[0]);
@@ -198,7 +215,15 @@ class ImageItem extends JPanel {
 		copy.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new ImageSelection(fs.image), null);
+				try {
+					IconPixels pixels = fs.getImage();
+					if (pixels == null)
+						return;
+					Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new ImageSelection(pixels.toImage()), null);
+				} catch (IOException p) {
+					p.printStackTrace();
+					return;
+				}
 				/**
 				 * The call to MouseListener does not work on Linux and macOS systems,
 				 *  so keep the old call. This version does not work on some results 
@@ -215,9 +240,9 @@ class ImageItem extends JPanel {
 		delete.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
+				image.change(fs);
 				fs.isIcon = DiskIcons.NOT_AN_ICON;
 				canvas.doRepaint(image);
-				image.setUndo(true);
 			}
 		});
 		
@@ -55,8 +55,20 @@ class ListItem {
 		return image.getView();
 	}
 	
+	/**
+	 * Adds a new entry, like a pasted image, as an edit that can be undone.
+	 */
 	void putIcon(DiskIconsView fs) {
-		image.putIcon(fs);
+		image.getHistory().add(fs);
+		app.saveButton();
+	}
+	
+	/**
+	 * Remembers {@code fs} as it is now, before the caller changes it.
+	 */
+	void change(DiskIconsView fs) {
+		image.getHistory().change(fs);
+		app.saveButton();
 	}
 	
 	File getFile() {
@@ -66,9 +78,19 @@ class ListItem {
 	boolean getUndo() {
 		return image.getUndo();
 	}
-	void setUndo(boolean undo) {
-		image.setUndo(undo);
-		app.saveButton();
+	
+	boolean canUndo(boolean redo) {
+		return redo? image.getHistory().canRedo(): image.getHistory().canUndo();
+	}
+	
+	/**
+	 * Reverts the last edit, or applies again the last one reverted.
+	 * 
+	 * @param redo	True to redo, false to undo.
+	 * @return	true if an entry was changed.
+	 */
+	boolean undo(boolean redo) {
+		return (redo? image.getHistory().redo(): image.getHistory().undo()) != null;
 	}
 	
 	/**
@@ -132,7 +154,7 @@ class ListItem {
 		try (DiskIcons clone = DiskImage.create(type, to, image, type.toLowerCase().equals("ico") ? icon : null)) {
 			done = clone.done;	// done open by DiskImage
 			if (save) 
-				image.setUndo(false);
+				image.getHistory().setSaved();
 		} catch (IOException | WrongHeaderException e) {
 			JOptionPane.showMessageDialog(app, 
 					String.format(app.res.getString("image_abnormal")+" "+app.res.getString("image_not_"+result)), 
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.png;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import io.github.eternalbits.disk.DiskIcons;
+import io.github.eternalbits.disk.IconPixels;
+import io.github.eternalbits.icons.Pool;
+
+/**
+ * A small PNG decoder for the color types that icons actually use. The IDAT
+ *  stream is inflated and unfiltered one row at a time, and each row is stored
+ *  as packed ARGB in {@link IconPixels}. Any
+ *  variant not handled here (interlaced images) returns {@code null}, and
+ *  the caller falls back to ImageIO.
+ * <p>
+ */
+class PngDecoder {
+	static final int IHDR = 0x49484452;
+	static final int PLTE = 0x504C5445;
+	static final int TRNS = 0x74524E53;
+	static final int IDAT = 0x49444154;
+	static final int IEND = 0x49454E44;
+
+	private int		width;					// Width in pixels
+	private int		height;					// Height in pixels
+	private int		depth;					// Bit depth (1, 2, 4, 8 or 16)
+	private int		color;					// Color type (0, 2, 3, 4 or 6)
+	private int		stride;					// Bytes in one row, without the filter byte
+	private int		bpp;					// Bytes per complete pixel, rounded up to 1
+
+	private int[]	palette = null;			// PLTE plus tRNS as ARGB, only for color type 3
+	private long	key = -1;				// tRNS color key for color types 0 and 2, in raw samples
+
+	private PngDecoder() {}
+
+	/**
+	 * Decodes a PNG from {@code in}, which must be positioned at the signature.
+	 *  CRCs are not checked here because {@link PngHeader#ImageHeader} has already
+	 *  walked and validated every chunk.
+	 *
+	 * @param in	The PNG stream, in network byte order.
+	 * @param img	The DiskIcons that owns the decoded pixels.
+	 * @return	The decoded image, or {@code null} if this variant is not supported.
+	 */
+	static IconPixels decode(DataInput in, DiskIcons img) throws IOException {
+		return new PngDecoder().read(in, img);
+	}
+
+	private IconPixels read(DataInput in, DiskIcons img) throws IOException {
+		if (in.readInt() != PngFiles.ICON_PGN || in.readInt() != PngFiles.DOS_UNIX)
+			return null;
+
+		IconPixels image = null;
+		int[] argb = null;
+		byte[] buffer = Pool.borrow(8192);
+		byte[] row = null, prev = null;
+		int y = 0, filled = 0;
+
+		Inflater inflater = Pool.inflater();
+		try {
+			while (true) {
+				int length = in.readInt();
+				int type = in.readInt();
+				if (length < 0)
+					return null;
+
+				if (type == IHDR) {
+					width		= in.readInt();
+					height		= in.readInt();
+					depth		= in.readUnsignedByte();
+					color		= in.readUnsignedByte();
+					int method	= in.readUnsignedByte();
+					int filter	= in.readUnsignedByte();
+					int lace	= in.readUnsignedByte();
+					skip(in, length - 13, buffer);
+					if (image != null || width <= 0 || height <= 0 || method != 0 || filter != 0 || lace != 0 || !supported())
+						return null;
+					int bits = depth * channels();
+					stride = (int) (((long) width * bits + 7) / 8);
+					bpp = Math.max(1, bits / 8);
+					row = Pool.borrow(stride + 1);
+					prev = Pool.borrow(stride + 1);
+					Arrays.fill(prev, (byte) 0);
+					image = img.newPixels(width, height);
+					argb = new int[width];
+				}
+				else
+				if (type == PLTE) {
+					palette = new int[256];
+					for (int i = 0; i < length / 3; i++) {
+						int rgb = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+						if (i < palette.length)
+							palette[i] = 0xFF000000 | rgb;
+					}
+					skip(in, length % 3, buffer);
+				}
+				else
+				if (type == TRNS) {
+					if (color == 3 && palette != null) {
+						for (int i = 0; i < length; i++) {
+							int alpha = in.readUnsignedByte();
+							if (i < palette.length)
+								palette[i] = alpha << 24 | palette[i] & 0xFFFFFF;
+						}
+					}
+					else
+					if (color == 0 && length >= 2) {
+						key = in.readUnsignedShort();
+						skip(in, length - 2, buffer);
+					}
+					else
+					if (color == 2 && length >= 6) {
+						int shift = depth == 16? 16: 8;
+						key = (long) in.readUnsignedShort() << 2 * shift | (long) in.readUnsignedShort() << shift
+								| in.readUnsignedShort();
+						skip(in, length - 6, buffer);
+					}
+					else skip(in, length, buffer);
+				}
+				else
+				if (type == IDAT) {
+					if (image == null || (color == 3 && palette == null))
+						return null;
+					while (length > 0) {
+						int n = Math.min(length, buffer.length);
+						in.readFully(buffer, 0, n);
+						length -= n;
+						inflater.setInput(buffer, 0, n);
+						while (y < height) {
+							int r = inflater.inflate(row, filled, row.length - filled);
+							filled += r;
+							if (filled == row.length) {
+								if (!unfilter(row, prev))
+									return null;
+								toArgb(row, argb, 0);
+								image.setRow(y, argb);
+								byte[] swap = prev; prev = row; row = swap;
+								filled = 0;
+								y++;
+							}
+							else
+							if (r == 0)
+								break;
+						}
+					}
+				}
+				else
+				if (type == IEND) {
+					break;
+				}
+				else skip(in, length, buffer);
+
+				in.readInt();		// CRC
+			}
+		} catch (DataFormatException e) {
+			return null;
+		} finally {
+			Pool.giveBack(buffer);
+			Pool.giveBack(row);
+			Pool.giveBack(prev);
+		}
+
+		return y == height? image: null;
+	}
+
+	/**
+	 * Only the standard combinations of color type and bit depth, without
+	 *  interlacing. A palette image still needs a PLTE chunk before IDAT.
+	 */
+	private boolean supported() {
+		switch (color) {
+		case 0: return depth == 1 || depth == 2 || depth == 4 || depth == 8 || depth == 16;
+		case 3: return depth == 1 || depth == 2 || depth == 4 || depth == 8;
+		case 2: case 4: case 6: return depth == 8 || depth == 16;
+		}
+		return false;
+	}
+
+	private int channels() {
+		switch (color) {
+		case 2: return 3;
+		case 4: return 2;
+		case 6: return 4;
+		}
+		return 1;
+	}
+
+	/**
+	 * Reverses the filter of one row. The first byte of each row is the filter
+	 *  type, and {@code prev} is the previous row already unfiltered.
+	 *
+	 * @param row	The row being decoded, including the filter byte.
+	 * @param prev	The previous row, all zeros for the first row.
+	 * @return	false if the filter type is unknown.
+	 */
+	private boolean unfilter(byte[] row, byte[] prev) {
+		switch (row[0]) {
+		case 0:
+			break;
+		case 1:
+			for (int i = 1 + bpp; i < row.length; i++)
+				row[i] += row[i - bpp];
+			break;
+		case 2:
+			for (int i = 1; i < row.length; i++)
+				row[i] += prev[i];
+			break;
+		case 3:
+			for (int i = 1; i < row.length; i++) {
+				int a = i > bpp? row[i - bpp] & 0xff: 0;
+				row[i] += (a + (prev[i] & 0xff)) >>> 1;
+			}
+			break;
+		case 4:
+			for (int i = 1; i < row.length; i++) {
+				int a = i > bpp? row[i - bpp] & 0xff: 0;
+				int b = prev[i] & 0xff;
+				int c = i > bpp? prev[i - bpp] & 0xff: 0;
+				int p = a + b - c;
+				int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+				row[i] += pa <= pb && pa <= pc? a: pb <= pc? b: c;
+			}
+			break;
+		default:
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Converts one unfiltered row to packed ARGB. Samples with 16 bits keep
+	 *  the most significant byte, samples with less than 8 bits are scaled.
+	 *  The tRNS key is compared with the raw samples, before they are cut.
+	 *
+	 * @param row	The unfiltered row, including the filter byte.
+	 * @param argb	The pixels of the row.
+	 * @param posic	Position of the first pixel of the row.
+	 */
+	private void toArgb(byte[] row, int[] argb, int posic) {
+		int step = depth == 16? 2: 1;
+		switch (color) {
+		case 6:
+			for (int x = 0, i = 1; x < width; x++, i += 4 * step)
+				argb[posic + x] = (row[i + 3 * step] & 0xff) << 24 | (row[i] & 0xff) << 16
+						| (row[i + step] & 0xff) << 8 | (row[i + 2 * step] & 0xff);
+			break;
+		case 2:
+			for (int x = 0, i = 1; x < width; x++, i += 3 * step) {
+				int rgb = (row[i] & 0xff) << 16 | (row[i + step] & 0xff) << 8 | (row[i + 2 * step] & 0xff);
+				long raw = step == 1? rgb: (long) (rgb >>> 16) << 40 | (row[i + 1] & 0xffL) << 32
+						| (long) ((rgb >>> 8) & 0xff) << 24 | (row[i + 3] & 0xff) << 16
+						| (rgb & 0xff) << 8 | (row[i + 5] & 0xff);
+				argb[posic + x] = (raw == key? 0: 0xFF000000) | rgb;
+			}
+			break;
+		case 4:
+			for (int x = 0, i = 1; x < width; x++, i += 2 * step) {
+				int g = row[i] & 0xff;
+				argb[posic + x] = (row[i + step] & 0xff) << 24 | g << 16 | g << 8 | g;
+			}
+			break;
+		case 0:
+			for (int x = 0; x < width; x++) {
+				int v = value(row, x);
+				int g = depth == 16? v >>> 8: v * 255 / ((1 << depth) - 1);
+				argb[posic + x] = (v == key? 0: 0xFF000000) | g << 16 | g << 8 | g;
+			}
+			break;
+		case 3:
+			for (int x = 0; x < width; x++)
+				argb[posic + x] = palette == null? 0: palette[value(row, x)];
+			break;
+		}
+	}
+
+	/**
+	 * Returns the raw sample {@code x} of a row with only one channel.
+	 */
+	private int value(byte[] row, int x) {
+		if (depth == 16)
+			return (row[1 + 2 * x] & 0xff) << 8 | (row[2 + 2 * x] & 0xff);
+		if (depth == 8)
+			return row[1 + x] & 0xff;
+		int bit = x * depth;
+		int shift = 8 - depth - bit % 8;
+		return (row[1 + bit / 8] >>> shift) & ((1 << depth) - 1);
+	}
+
+	private static void skip(DataInput in, int n, byte[] buffer) throws IOException {
+		while (n > 0) {
+			int k = Math.min(n, buffer.length);
+			in.readFully(buffer, 0, k);
+			n -= k;
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Rui Baptista
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eternalbits.png;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.github.eternalbits.disk.IconPixels;
+import io.github.eternalbits.icons.Pool;
+
+/**
+ * Writes {@link IconPixels} as a PNG with 8-bit RGBA (color type 6), the same
+ *  layout ImageIO used to write for a {@code TYPE_INT_ARGB} image. Each row
+ *  takes the filter with the smallest sum of absolute differences, and the
+ *  filtered rows are deflated with the Deflater of {@link Pool}.
+ * <p>
+ */
+public class PngEncoder {
+	static final int LEVEL = 6;					// Deflate level, the zlib default
+	static final int IDAT_SIZE = 32768;			// Maximum length of an IDAT chunk
+
+	private PngEncoder() {}
+
+	/**
+	 * Encodes the pixels as a complete PNG file.
+	 *
+	 * @param pixels	The pixels to be encoded.
+	 * @param out	Where the PNG is written, it is not closed.
+	 */
+	public static void encode(IconPixels pixels, OutputStream out) throws IOException {
+		int width = pixels.getWidth();
+		int height = pixels.getHeight();
+		CRC32 crc = new CRC32();
+
+		byte[] header = new byte[8];
+		putInt(header, 0, PngFiles.ICON_PGN);
+		putInt(header, 4, PngFiles.DOS_UNIX);
+		out.write(header);
+
+		byte[] ihdr = new byte[13];
+		putInt(ihdr, 0, width);
+		putInt(ihdr, 4, height);
+		ihdr[8] = 8;							// Bit depth
+		ihdr[9] = 6;							// Color type RGBA
+		writeChunk(out, PngDecoder.IHDR, ihdr, ihdr.length, crc);
+
+		int stride = 4 * width;
+		int[] argb = new int[width];
+		byte[] prev = Pool.borrow(stride + 1);
+		byte[] raw = Pool.borrow(stride + 1);
+		byte[][] filtered = new byte[5][];
+		for (int f = 0; f < filtered.length; f++)
+			filtered[f] = Pool.borrow(stride + 1);
+		byte[] idat = Pool.borrow(IDAT_SIZE);
+		Arrays.fill(prev, (byte) 0);
+		int used = 0;
+
+		Deflater deflater = Pool.deflater(LEVEL);
+		for (int y = 0; y < height; y++) {
+			pixels.getRow(y, argb);
+			for (int x = 0, i = 1; x < width; x++, i += 4) {
+				int p = argb[x];
+				raw[i]		= (byte) (p >>> 16);
+				raw[i + 1]	= (byte) (p >>> 8);
+				raw[i + 2]	= (byte) p;
+				raw[i + 3]	= (byte) (p >>> 24);
+			}
+			byte[] row = filterRow(raw, prev, filtered);
+			deflater.setInput(row);
+			while (!deflater.needsInput()) {
+				used += deflater.deflate(idat, used, idat.length - used);
+				if (used == idat.length) {
+					writeChunk(out, PngDecoder.IDAT, idat, used, crc);
+					used = 0;
+				}
+			}
+			byte[] swap = prev; prev = raw; raw = swap;
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			used += deflater.deflate(idat, used, idat.length - used);
+			if (used == idat.length || deflater.finished()) {
+				writeChunk(out, PngDecoder.IDAT, idat, used, crc);
+				used = 0;
+			}
+		}
+
+		writeChunk(out, PngDecoder.IEND, idat, 0, crc);
+		for (byte[] row: filtered)
+			Pool.giveBack(row);
+		Pool.giveBack(raw);
+		Pool.giveBack(prev);
+		Pool.giveBack(idat);
+	}
+
+	/**
+	 * Applies the five filters to {@code raw} and returns the one with the
+	 *  smallest sum of absolute values, the heuristic of the PNG specification.
+	 *
+	 * @param raw	The unfiltered row, the first byte is left for the filter type.
+	 * @param prev	The previous unfiltered row, all zeros for the first row.
+	 * @param filtered	Five rows where each filter is applied.
+	 * @return	One of {@code filtered}, with the filter type in the first byte.
+	 */
+	private static byte[] filterRow(byte[] raw, byte[] prev, byte[][] filtered) {
+		int bpp = 4;
+		long best = Long.MAX_VALUE;
+		byte[] chosen = null;
+		for (int f = 0; f < 5; f++) {
+			byte[] out = filtered[f];
+			out[0] = (byte) f;
+			long sum = 0;
+			for (int i = 1; i < raw.length; i++) {
+				int a = i > bpp? raw[i - bpp] & 0xff: 0;
+				int b = prev[i] & 0xff;
+				int c = i > bpp? prev[i - bpp] & 0xff: 0;
+				int x = raw[i] & 0xff;
+				int v;
+				switch (f) {
+				case 0: v = x; break;
+				case 1: v = x - a; break;
+				case 2: v = x - b; break;
+				case 3: v = x - ((a + b) >>> 1); break;
+				default:
+					int p = a + b - c;
+					int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+					v = x - (pa <= pb && pa <= pc? a: pb <= pc? b: c);
+				}
+				out[i] = (byte) v;
+				sum += Math.abs((byte) v);
+				if (sum >= best)
+					break;
+			}
+			if (sum < best) {
+				best = sum;
+				chosen = out;
+			}
+		}
+		return chosen;
+	}
+
+	private static void writeChunk(OutputStream out, int type, byte[] data, int length, CRC32 crc) throws IOException {
+		byte[] head = new byte[8];
+		putInt(head, 0, length);
+		putInt(head, 4, type);
+		out.write(head);
+		out.write(data, 0, length);
+		crc.reset();
+		crc.update(head, 4, 4);
+		crc.update(data, 0, length);
+		putInt(head, 0, (int) crc.getValue());
+		out.write(head, 0, 4);
+	}
+
+	private static void putInt(byte[] b, int i, int v) {
+		b[i]		= (byte) (v >>> 24);
+		b[i + 1]	= (byte) (v >>> 16);
+		b[i + 2]	= (byte) (v >>> 8);
+		b[i + 3]	= (byte) v;
+	}
+
+}
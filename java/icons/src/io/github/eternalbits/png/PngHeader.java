@@ -17,8 +17,7 @@
 package io.github.eternalbits.png;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -26,11 +25,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.CRC32;
 
-import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
 import io.github.eternalbits.disk.DiskIcons;
 import io.github.eternalbits.disk.DiskIconsView;
+import io.github.eternalbits.disk.IconBytes;
+import io.github.eternalbits.disk.IconLimits;
+import io.github.eternalbits.disk.IconOutput;
+import io.github.eternalbits.disk.IconPixels;
+import io.github.eternalbits.disk.IconSource;
 import io.github.eternalbits.disk.WrongHeaderException;
+import io.github.eternalbits.icons.Pool;
 import io.github.eternalbits.icons.Static;
 
 /**
@@ -40,12 +45,17 @@ import io.github.eternalbits.icons.Static;
 public
 class PngHeader {
 	static final int HEADER_SIZE = 8;
+	static final int BUFFER_SIZE = 8192;		// Bytes of a chunk streamed at a time
 	
 	List<DiskIconsView> disk = new ArrayList<DiskIconsView>();
+	IconOutput output = null;		// The file to be written, if there is anything to write
 
 	int		signature;				// Magic literal, must be "%PNG" (0x89, 0x50, 0x4E, 0x47)
 	int		dosUnix;				// A style line ending, must be 0x0D, 0x0A, 0x1A, 0x0A
 	
+	int		width;					// Width of the last IHDR read by ImageHeader
+	int		height;					// Height of the last IHDR read by ImageHeader
+	
 	/**
 	 * PNG file writing routine.
 	 * 
@@ -75,17 +85,34 @@ class PngHeader {
 		 * If you find any, write them down
 		 */
 		if (es != null) {
-			RandomAccessFile to = png.getMedia();
-			png.done = true;
-			to.setLength(0);
-			BufferedImage es_image = Static.copyPng(es.image, es.size, es.layout);
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();					// Passing bytes from a saved image to PNG
-			ImageIO.write(es_image, "png", baos);
-			to.write(baos.toByteArray());
-			es.length = baos.size();
+			IconBytes es_bytes = es.getBytes(DiskIcons.ICON_PNG, es.size);				// The PNG as read, if it was not modified
+			IconPixels es_pixels = null;
+			if (es_bytes == null)
+				es_pixels = es.getImage();
+			if (es_bytes == null && es_pixels == null)
+				return;																	// It cannot be decoded
+			output = new IconOutput();
+			if (es_bytes != null) {
+				output.add(es_bytes);
+				es.length = es_bytes.getLength();
+				return;
+			}
+			IconPixels es_image = Static.copyPng(es_pixels, es.size, es.layout);
+			Pool.Output out = Pool.output();											// Passing bytes from a saved image to PNG
+			PngEncoder.encode(es_image, out);
+			output.add(out.toByteArray());
+			es.length = out.size();
 		}
 	}
 	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
 	/**
 	 * PNG file reading routine.
 	 * 
@@ -107,8 +134,9 @@ class PngHeader {
 				view.length = (int) png.getLength();
 				view.type = png.getType();
 				view.description = this.ImageHeader(png, HEADER_SIZE, view.length);
-				view.image = this.createPng(png, view.offset, view.length);
+				view.setSource(this.sourcePng(png, view.offset, view.length), width, height);
 				view.layout = view.description;
+				view.setBytes(this.bytesPng(png, view.offset, view.length, view.layout));
 				disk.add(view);
 				return;
 			}
@@ -126,6 +154,9 @@ class PngHeader {
 	
 	/**
 	 * This routine checks if PNG is true and can be called by the 3 routines.
+	 *  The chunks are streamed through a small buffer while their CRC is
+	 *  computed, so a chunk is never held in memory as a whole, whatever length
+	 *  its header claims.
 	 * 
 	 * @param img	Access to each of the 3 routines: ICO, ICNS and PNG.
 	 * @param offset	The reading position.
@@ -138,39 +169,53 @@ class PngHeader {
 		int		length = 0;				// Length of chunk, in bytes, msb first
 		int		type = 0;				// Chunk type/name of chunk
 		
-		CRC32 crc = new CRC32();				
-		long previous = offset;
-		ByteBuffer tr = img.readIcon(offset, 4).order(PngFiles.BYTE_ORDER);
+		CRC32 crc = new CRC32();
+		byte[] buffer = Pool.borrow(BUFFER_SIZE);
+		ByteBuffer tr = ByteBuffer.wrap(buffer).order(PngFiles.BYTE_ORDER);
 		
-		while (type != 0x49454E44) {	// IEND
-			offset += tr.remaining();
-			if (tr.remaining() != 4)
-				throw new WrongHeaderException(getClass(), img.getPath());
-			length = tr.getInt();
-			
-			tr = img.readIcon(offset, length + 4).order(PngFiles.BYTE_ORDER);
-			offset += tr.remaining();
-			if (tr.remaining() != length + 4)
-				throw new WrongHeaderException(getClass(), img.getPath());
-			type = tr.getInt(0);
-			
-			if (type == 0x49484452) {	// IHDR
-				dim[0] = tr.getInt(4);
-				dim[1] = tr.getInt(8);
+		try (ImageInputStream in = img.openIcon(offset, size - 8)) {
+			while (type != 0x49454E44) {	// IEND
+				in.readFully(buffer, 0, 8);
+				length = tr.getInt(0);
+				type = tr.getInt(4);
+				if (length < 0 || length > in.length() - in.getStreamPosition() - 4)
+					throw new WrongHeaderException(getClass(), img.getPath());
+				
+				crc.reset();
+				crc.update(buffer, 4, 4);
+				if (type == 0x49484452) {	// IHDR
+					if (length < 8)
+						throw new WrongHeaderException(getClass(), img.getPath());
+					in.readFully(buffer, 0, 8);
+					dim[0] = tr.getInt(0);
+					dim[1] = tr.getInt(4);
+					IconLimits.checkPixels(img.getPath(), dim[0], dim[1]);
+					crc.update(buffer, 0, 8);
+					length -= 8;
+				}
+				while (length > 0) {
+					int n = Math.min(length, buffer.length);
+					in.readFully(buffer, 0, n);
+					crc.update(buffer, 0, n);
+					length -= n;
+				}
+				
+				if ((int)crc.getValue() != in.readInt())
+					throw new WrongHeaderException(getClass(), img.getPath());
 			}
 			
-			crc.reset();
-			crc.update(tr);
-			
-			tr = img.readIcon(offset, 4 + 4).order(PngFiles.BYTE_ORDER);			
-			if (tr.remaining() < 4 || (int)crc.getValue() != tr.getInt())
-				throw new WrongHeaderException(getClass(), img.getPath());
-			offset += 4;
+			if (in.getStreamPosition() != size - 8)
+				throw new WrongHeaderException(DiskIcons.class, img.getPath());
+		}
+		catch (EOFException e) {
+			throw new WrongHeaderException(getClass(), img.getPath());
+		}
+		finally {
+			Pool.giveBack(buffer);
 		}
 		
-		if (offset - previous != size - 8)
-			throw new WrongHeaderException(DiskIcons.class, img.getPath());
-		
+		width = dim[0];
+		height = dim[1];
 		String dimension = String.valueOf(dim[0]);
 		if (dim[0] != dim[1])
 			dimension += "x" + String.valueOf(dim[1]);
@@ -179,18 +224,62 @@ class PngHeader {
 	
 	/**
 	 * This routine is limited to reading a PNG file and saving this image
-	 *  while maintaining all the characteristics.
+	 *  while maintaining all the characteristics. The common color types are
+	 *  decoded by {@link PngDecoder} straight into pixels, and only the
+	 *  remaining variants go through ImageIO. Both read the entry
+	 *  in place from the file, without first copying it into an array.
 	 * 
 	 * @param img	Access to each of the 3 routines: ICO, ICNS and PNG.
 	 * @param offset	The reading position.
 	 * @param size	Number of bytes to be passed.
-	 * @return	Image with an accessible buffer of image data.
+	 * @return	The pixels of the icon.
 	 */
-	public BufferedImage createPng(DiskIcons img, int offset, int size) throws IOException {
-		img.getMedia().seek(offset);
-		byte[] data = new byte[size];
-		img.getMedia().read(data);
-		return ImageIO.read(new ByteArrayInputStream(data));
+	public IconPixels createPng(DiskIcons img, int offset, int size) throws IOException {
+		try (ImageInputStream in = img.openIcon(offset, size)) {
+			IconPixels image = PngDecoder.decode(in, img);
+			if (image == null) {
+				in.seek(0);
+				BufferedImage bi = Pool.read("png", in);
+				if (bi != null)
+					image = IconPixels.of(bi, img.newPixels(bi.getWidth(), bi.getHeight()));
+			}
+			return image;
+		}
+	}
+	
+	/**
+	 * The way to decode the PNG of {@link #createPng} again from the file.
+	 * 
+	 * @param img	Access to each of the 3 routines: ICO, ICNS and PNG.
+	 * @param offset	The reading position.
+	 * @param size	Number of bytes to be passed.
+	 * @return	The source of the pixels of the icon.
+	 */
+	public IconSource sourcePng(final DiskIcons img, final int offset, final int size) {
+		return img.source(new IconSource() {
+			@Override
+			public IconPixels decode() throws IOException {
+				return createPng(img, offset, size);
+			}
+		});
+	}
+	
+	/**
+	 * The bytes of the PNG of {@link #createPng}, to be written again as they are.
+	 *  Only a PNG of 8-bit RGBA is kept, the one that {@link PngEncoder} would
+	 *  write, any other is encoded again like it always was.
+	 * 
+	 * @param img	Access to each of the 3 routines: ICO, ICNS and PNG.
+	 * @param offset	The reading position.
+	 * @param size	Number of bytes to be passed.
+	 * @param layout	A detailed description, like "256 PNG".
+	 * @return	The bytes of the PNG, or {@code null}.
+	 */
+	public IconBytes bytesPng(DiskIcons img, int offset, int size, String layout) throws IOException {
+		ByteBuffer tr = img.readIcon(offset + 24, 2);		// Bit depth and color type of IHDR
+		boolean rgba = tr.remaining() == 2 && tr.get(0) == 8 && tr.get(1) == 6;
+		Pool.giveBack(tr.array());
+		return rgba? img.bytes(offset, size, DiskIcons.ICON_PNG, Static.getInteger(layout)): null;
 	}
 	
 	/**
@@ -203,6 +292,7 @@ class PngHeader {
 	 */
 	public void writeImage(RandomAccessFile from, int original, RandomAccessFile to, int size) throws IOException {
 		byte[] buffer = new byte[8];
+		byte[] detail = Pool.borrow(BUFFER_SIZE);
 		ByteBuffer tr = null;
 		from.seek(original);
 		
@@ -215,11 +305,17 @@ class PngHeader {
 			to.write(buffer);
 			
 			tr = ByteBuffer.wrap(buffer).order(PngFiles.BYTE_ORDER);
-			byte[] detail = new byte[tr.getInt(0) + 4];
-			get += 8 + tr.getInt(0) + 4;
-			from.read(detail);
-			to.write(detail);
+			int length = tr.getInt(0) + 4;
+			get += 8 + length;
+			while (length > 0) {
+				int n = from.read(detail, 0, Math.min(length, detail.length));
+				if (n < 0)
+					throw new EOFException();
+				to.write(detail, 0, n);
+				length -= n;
+			}
 		}
+		Pool.giveBack(detail);
 	}
 	
 }